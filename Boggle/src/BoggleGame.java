@@ -114,10 +114,10 @@ public class BoggleGame extends JFrame {
 
     // dictionaries
     // (words that appear in Shakespeare, nursery rhymes, common words, and Algorithms 4/e)
-    private SET<String> shakespeareDictionary;
-    private SET<String> nurseryDictionary;
-    private SET<String> commonDictionary;
-    private SET<String> algs4Dictionary;
+    private DoubleArrayTrie shakespeareDictionary;
+    private DoubleArrayTrie nurseryDictionary;
+    private DoubleArrayTrie commonDictionary;
+    private DoubleArrayTrie algs4Dictionary;
 
     // GUI elements 
     private JMenuBar menuBar;
@@ -383,39 +383,43 @@ public class BoggleGame extends JFrame {
         );
 
         // all words in shakespeare
-        In in1 = new In(new File("dictionary-shakespeare.txt"));
-        shakespeareDictionary = new SET<String>();
-        for (String s : in1.readAllStrings())
-            shakespeareDictionary.add(s);
+        shakespeareDictionary = loadDictionary("dictionary-shakespeare");
 
-        // all words in shakespeare
-        In in2 = new In(new File("dictionary-nursery.txt"));
-        nurseryDictionary = new SET<String>();
-        for (String s : in2.readAllStrings())
-            nurseryDictionary.add(s);
+        // all words in nursery rhymes
+        nurseryDictionary = loadDictionary("dictionary-nursery");
 
         // about 20K common words
-        In in3 = new In(new File("dictionary-common.txt"));
-        commonDictionary = new SET<String>();
-        for (String s : in3.readAllStrings())
-            commonDictionary.add(s);
+        commonDictionary = loadDictionary("dictionary-common");
 
         // all words in Algorithms 4/e
-        In in4 = new In(new File("dictionary-algs4.txt"));
-        algs4Dictionary = new SET<String>();
-        for (String s : in4.readAllStrings())
-            algs4Dictionary.add(s);
-
-        // dictionary
-        In in = new In(new File("dictionary-yawl.txt"));
-        String[] dictionary = in.readAllStrings();
+        algs4Dictionary = loadDictionary("dictionary-algs4");
 
         // create the Boggle solver with the given dictionary
-        solver = new BoggleSolver(dictionary);
+        solver = new BoggleSolver(loadDictionary("dictionary-yawl"));
 
         newGame();
         this.pack();   
     }
+
+    /**
+     * Loads the dictionary name.trie, an image compiled by DoubleArrayTrie,
+     * or builds it from the word list name.txt if there is no image, the
+     * word list has changed since, or the image is of an older format
+     */
+    private static DoubleArrayTrie loadDictionary(String name) {
+        File image = new File(name + ".trie");
+        File text = new File(name + ".txt");
+        if (image.exists() && image.lastModified() >= text.lastModified()) {
+            try {
+                return DoubleArrayTrie.load(image.getPath());
+            }
+            catch (IllegalArgumentException e) {
+                // fall through and build from the word list
+            }
+        }
+        In in = new In(text);
+        return new DoubleArrayTrie(in.readAllStrings());
+    }
     
     /**
      * Start a new game, can be called via the menu selection, the button, or CMD+N (CRTL+N)
@@ -608,7 +612,7 @@ public class BoggleGame extends JFrame {
 
         // used for testing (gets 100% of all valid words)
         else if (s.equals("GODMODE")) {
-            for (String str : solver.getAllValidWords(board)) {
+            for (String str : solver.words(board)) {
                 entryField.setText(str);
                 checkWord();
             }
@@ -616,7 +620,7 @@ public class BoggleGame extends JFrame {
 
         // used for testing (gets 25% of all valid words)
         else if (s.equals("GODMODE4")) {
-            for (String str : solver.getAllValidWords(board)) {
+            for (String str : solver.words(board)) {
                 if (StdRandom.uniform(4) == 0) {
                     entryField.setText(str);
                     checkWord();
@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// searches for high-scoring M-by-N boards by simulated annealing: every chain
+// starts from a random board and changes the letter of one random cell per
+// step, keeping the change if the score does not drop and otherwise with
+// probability exp(delta / T), while the temperature T cools geometrically
+// from T0 to T1; chains run in parallel, and each rescores its board
+// incrementally, searching again only from the starting cells whose paths
+// looked at the changed cell, since no other path can spell anything new
+public class BoggleOptimizer {
+    private static final double T0 = 100.0, T1 = 0.5;
+
+    private final BoggleSolver solver;
+    private final int M, N;
+    private final AtomicLong boards = new AtomicLong();
+    private int bestScore = -1;
+    private int[] bestLetters;
+
+    // one annealing run; count[id] is the number of starting cells whose paths spell the word with that id
+    private class Chain implements Callable<Void> {
+        private final Random random;
+        private final int steps;
+        private final int[] letters = new int[M * N];
+        private final BoggleSolver.Found[] words = new BoggleSolver.Found[M * N];
+        private final long[][] footprints = new long[M * N][];
+        private final int[] count = new int[solver.dictionary().size()];
+        private int score = 0;
+
+        Chain(long seed, int steps) {
+            random = new Random(seed);
+            this.steps = steps;
+        }
+
+        public Void call() {
+            for (int cell = 0; cell < letters.length; ++cell) {
+                letters[cell] = random.nextInt(26);
+            }
+            for (int cell = 0; cell < letters.length; ++cell) {
+                search(cell);
+                add(words[cell]);
+            }
+            offer(score, letters);
+
+            int[] changed = new int[letters.length];
+            BoggleSolver.Found[] oldWords = new BoggleSolver.Found[letters.length];
+            long[][] oldFootprints = new long[letters.length][];
+            for (int step = 0; step < steps; ++step) {
+                double T = T0 * Math.pow(T1 / T0, (double) step / steps);
+                int cell = random.nextInt(letters.length);
+                int old = letters[cell];
+                letters[cell] = (old + 1 + random.nextInt(25)) % 26;
+
+                // the starting cells whose paths read the changed cell
+                int n = 0;
+                for (int start = 0; start < letters.length; ++start) {
+                    if ((footprints[start][cell >>> 6] & (1L << cell)) != 0) {
+                        changed[n++] = start;
+                    }
+                }
+                int before = score;
+                for (int i = 0; i < n; ++i) {
+                    int start = changed[i];
+                    oldWords[start] = words[start];
+                    oldFootprints[start] = footprints[start];
+                    remove(words[start]);
+                }
+                for (int i = 0; i < n; ++i) {
+                    search(changed[i]);
+                    add(words[changed[i]]);
+                }
+                boards.incrementAndGet();
+
+                int delta = score - before;
+                if (delta >= 0 || random.nextDouble() < Math.exp(delta / T)) {
+                    if (delta > 0) {
+                        offer(score, letters);
+                    }
+                    continue;
+                }
+                // rejected, so put back the old board with its words
+                letters[cell] = old;
+                for (int i = 0; i < n; ++i) {
+                    int start = changed[i];
+                    remove(words[start]);
+                    words[start] = oldWords[start];
+                    footprints[start] = oldFootprints[start];
+                    add(words[start]);
+                }
+            }
+            return null;
+        }
+
+        private void search(int start) {
+            footprints[start] = new long[(letters.length + 63) >>> 6];
+            words[start] = solver.wordsFrom(M, N, letters, start, footprints[start]);
+        }
+
+        private void add(BoggleSolver.Found found) {
+            for (int i = 0; i < found.size(); ++i) {
+                if (count[found.id(i)]++ == 0) {
+                    score += found.points(i);
+                }
+            }
+        }
+
+        private void remove(BoggleSolver.Found found) {
+            for (int i = 0; i < found.size(); ++i) {
+                if (--count[found.id(i)] == 0) {
+                    score -= found.points(i);
+                }
+            }
+        }
+    }
+
+    public BoggleOptimizer(BoggleSolver solver, int M, int N) {
+        if (M <= 0 || N <= 0) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        this.solver = solver;
+        this.M = M;
+        this.N = N;
+    }
+
+    private synchronized void offer(int score, int[] letters) {
+        if (score > bestScore) {
+            bestScore = score;
+            bestLetters = letters.clone();
+        }
+    }
+
+    // runs chains chains of steps steps each on pool, the i-th seeded with
+    // seed + i, and returns the best board found
+    public BoggleBoard optimize(int chains, int steps, long seed, ForkJoinPool pool) {
+        return optimize(chains, steps, seed, pool, false);
+    }
+
+    private BoggleBoard optimize(int chains, int steps, long seed, ForkJoinPool pool, boolean report) {
+        if (chains <= 0 || steps < 0) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>(chains);
+        for (int i = 0; i < chains; ++i) {
+            tasks.add(pool.submit(new Chain(seed + i, steps)));
+        }
+        long start = System.nanoTime();
+        try {
+            for (ForkJoinTask<Void> task : tasks) {
+                while (true) {
+                    try {
+                        task.get(1, TimeUnit.SECONDS);
+                        break;
+                    }
+                    catch (TimeoutException e) {
+                        if (report) {
+                            report(start);
+                        }
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.lang.IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new java.lang.IllegalStateException(e.getCause());
+        }
+        if (report) {
+            report(start);
+        }
+        return bestBoard();
+    }
+
+    private void report(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StdOut.printf("%7.1f s  %12d boards  %10.0f boards/s  best %d%n",
+                      seconds, boards.get(), boards.get() / seconds, bestScore());
+    }
+
+    // the best board found so far, null before any
+    public synchronized BoggleBoard bestBoard() {
+        if (bestLetters == null) {
+            return null;
+        }
+        char[][] a = new char[M][N];
+        for (int i = 0; i < M; ++i) {
+            for (int j = 0; j < N; ++j) {
+                a[i][j] = (char) ('A' + bestLetters[i * N + j]);
+            }
+        }
+        return new BoggleBoard(a);
+    }
+
+    // score of bestBoard(), -1 before any
+    public synchronized int bestScore() {
+        return bestScore;
+    }
+
+    // number of boards scored so far, counting every step of every chain
+    public long boardsScored() {
+        return boards.get();
+    }
+
+    // usage: java BoggleOptimizer dictionary M N [chains [steps [seed]]]
+    public static void main(String[] args) {
+        BoggleSolver solver = new BoggleSolver(new In(args[0]).readAllStrings());
+        int M = Integer.parseInt(args[1]);
+        int N = Integer.parseInt(args[2]);
+        ForkJoinPool pool = new ForkJoinPool();
+        int chains = args.length > 3 ? Integer.parseInt(args[3]) : pool.getParallelism();
+        int steps = args.length > 4 ? Integer.parseInt(args[4]) : 100000;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+        BoggleOptimizer optimizer = new BoggleOptimizer(solver, M, N);
+        BoggleBoard board = optimizer.optimize(chains, steps, seed, pool, true);
+        pool.shutdown();
+
+        int score = 0;
+        for (String word : solver.getAllValidWords(board)) {
+            score += solver.scoreOf(word);
+        }
+        StdOut.println(board);
+        StdOut.println("Score =  " + score);
+    }
+}
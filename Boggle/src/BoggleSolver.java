@@ -1,181 +1,532 @@
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
+// the dictionary is immutable and every thread solves in its own scratch
+// space, so one BoggleSolver can be shared by many threads
 public class BoggleSolver {
-    private TwentySixTrieST<Integer> dict;
-    private HashSet<String> words;
+    // boards being solved ahead of the caller by solveAll(), per thread of the pool
+    private static final int BOARDS_AHEAD = 4;
+    // starting cells searched by one fork/join task of a parallel solve
+    private static final int CELLS_PER_TASK = 16;
 
-    private class Node {
-        private Object val;
-        private int depth;
-        private boolean hasChild;
-        private Node[] next;
+    private final DoubleArrayTrie dict;
+    private final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+        @Override
+        protected Search initialValue() {
+            return new Search();
+        }
+    };
+
+    // the cells of an M-by-N board, numbered i * N + j, and their neighbours:
+    // those of cell c are neighbors[offsets[c]] through neighbors[offsets[c + 1] - 1]
+    private static final class Grid {
+        private final int rows, cols;
+        private final int[] offsets, neighbors;
+
+        Grid(int M, int N) {
+            rows = M;
+            cols = N;
+            offsets = new int[M * N + 1];
+            neighbors = new int[8 * M * N];
+            int k = 0;
+            for (int i = 0; i < M; ++i) {
+                for (int j = 0; j < N; ++j) {
+                    for (int di = -1; di <= 1; ++di) {
+                        for (int dj = -1; dj <= 1; ++dj) {
+                            int ni = i + di, nj = j + dj;
+                            if ((di != 0 || dj != 0) && ni >= 0 && ni < M && nj >= 0 && nj < N) {
+                                neighbors[k++] = ni * N + nj;
+                            }
+                        }
+                    }
+                    offsets[i * N + j + 1] = k;
+                }
+            }
+        }
 
-        Node(int R, int d) {
-            next = new Node[R];
-            depth = d;
-            hasChild = false;
+        int cells() {
+            return rows * cols;
+        }
+
+        // the signature of the letters of a board of this grid, a Q cell counting
+        // as both Q and U; the DFS skips the trie states that need more
+        static long have(int[] letters) {
+            int[] counts = new int[26];
+            for (int letter : letters) {
+                ++counts[letter];
+                if (letter == 'Q' - 'A') {
+                    ++counts['U' - 'A'];
+                }
+            }
+            return DoubleArrayTrie.signature(counts);
+        }
+
+        // the letters of board, 0 for A through 25 for Z, by cell
+        int[] letters(BoggleBoard board) {
+            int[] letters = new int[rows * cols];
+            for (int i = 0; i < rows; ++i) {
+                for (int j = 0; j < cols; ++j) {
+                    letters[i * cols + j] = board.getLetter(i, j) - 'A';
+                }
+            }
+            return letters;
         }
     }
 
-    private class TwentySixTrieST<Value> {
-        private static final int R = 26;
-        private Node root = new Node(R, 0);
+    // the words found on a board, in order of discovery, with their ids and
+    // scores; the words themselves are left null unless strings is set
+    static final class Found implements Iterable<String> {
+        private final boolean strings;
+        private int[] ids = new int[16];
+        private int[] points = new int[16];
+        private String[] words;
+        private int n = 0;
+        private int score = 0;
 
-        public boolean contains(String key, Node node) {
-            return get(key, node) != null;
+        Found(boolean strings) {
+            this.strings = strings;
+            words = strings ? new String[16] : null;
         }
 
-        public Node searchPrefix(String prefix, Node node) {
-            if (node == null) {
-                return get(root, prefix, 0);
+        void add(int id, String word, int points) {
+            if (n == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * n);
+                this.points = Arrays.copyOf(this.points, 2 * n);
+                if (strings) {
+                    words = Arrays.copyOf(words, 2 * n);
+                }
             }
-            else {
-                return get(node, prefix, node.depth);
+            ids[n] = id;
+            this.points[n] = points;
+            if (strings) {
+                words[n] = word;
             }
+            ++n;
+            score += points;
+        }
+
+        int size() {
+            return n;
         }
 
-        public Value get(String key, Node node) {
-            Node x;
-            if (node == null) {
-                x = get(root, key, 0);
+        int id(int i) {
+            return ids[i];
+        }
+
+        int points(int i) {
+            return points[i];
+        }
+
+        // total score of the words
+        int score() {
+            return score;
+        }
+
+        public Iterator<String> iterator() {
+            return Arrays.asList(words).subList(0, n).iterator();
+        }
+    }
+
+    // per-thread state of a solve; found[id] == solve iff the word with that id
+    // was already found in the current solve
+    private class Search {
+        private final int[] found = new int[dict.size()];
+        private int solve = 0;
+        // the grid of the last board size solved by this thread, kept until a board of another size comes
+        private Grid cached;
+        private Grid grid;
+        private int[] letters;
+        // one bit per cell, so a board of up to 64 cells needs a single long
+        private long[] marked = new long[0];
+        // a path uses every cell at most once, and a Q cell spells two letters
+        private char[] word = new char[0];
+        // if not null, every cell the DFS looks at is set in it
+        private long[] footprint;
+        // signature of the letters of the board, see Grid.have()
+        private long have;
+
+        Grid grid(int M, int N) {
+            if (cached == null || cached.rows != M || cached.cols != N) {
+                cached = new Grid(M, N);
+            }
+            return cached;
+        }
+
+        Found solve(BoggleBoard board) {
+            Grid grid = grid(board.rows(), board.cols());
+            return solve(grid, grid.letters(board), 0, grid.cells(), new Found(true));
+        }
+
+        // adds to found the words of the paths starting in cells [from, to) of the board with the given letters
+        Found solve(Grid grid, int[] letters, int from, int to, Found found) {
+            begin();
+            this.grid = grid;
+            this.letters = letters;
+            // with a footprint, the words must depend on the cells looked at only
+            have = footprint == null ? Grid.have(letters) : -1L;
+            int cells = grid.cells();
+            if (marked.length < (cells + 63) >>> 6) {
+                marked = new long[(cells + 63) >>> 6];
+            }
+            // a path of k cells spells up to 2k letters, a Q cell spelling QU
+            if (word.length < 2 * cells) {
+                word = new char[2 * cells];
             }
-            else {
-                x = get(node, key, node.depth);
+            for (int cell = from; cell < to; ++cell) {
+                boardDFS(dict.root(), 0, cell, found);
             }
-            if (x == null) return null;
-            return (Value) x.val;
+            return found;
         }
 
-        private Node get(Node x, String key, int d) {
-            if (x == null) return null;
-            if (d == key.length()) return x;
-            char c = key.charAt(d);
-            return get(x.next[c - 'A'], key, d + 1);
+        // the words of all parts in order, each only where it first appears
+        Found merge(Found[] parts) {
+            begin();
+            Found merged = new Found(true);
+            for (Found part : parts) {
+                for (int i = 0; i < part.n; ++i) {
+                    if (found[part.ids[i]] != solve) {
+                        found[part.ids[i]] = solve;
+                        merged.add(part.ids[i], part.words[i], part.points[i]);
+                    }
+                }
+            }
+            return merged;
         }
 
-        public void put(String key, Value val) {
-            if (root == null) {
-                root = new Node(R, 0);
+        private void begin() {
+            ++solve;
+            if (solve == 0) {
+                // the counter wrapped around, so old stamps could be mistaken for new ones
+                Arrays.fill(found, 0);
+                solve = 1;
             }
-            root.hasChild = true;
-            root = put(root, key, val, 0);
         }
 
-        private Node put(Node x, String key, Value val, int d) {
-            if (d == key.length()) {
-                x.val = val;
-                return x;
+        // extends the path spelling word[0, length), which leads to state in the trie,
+        // with cell: one step down the trie per letter, and a String only for words
+        private void boardDFS(int state, int length, int cell, Found result) {
+            if (footprint != null) {
+                footprint[cell >>> 6] |= 1L << cell;
+            }
+            int letter = letters[cell];
+            int child = dict.child(state, letter);
+            word[length++] = (char) ('A' + letter);
+            if (letter == 'Q' - 'A' && child != -1) {
+                child = dict.child(child, 'U' - 'A');
+                word[length++] = 'U';
+            }
+            if (child == -1 || (dict.need(child) & ~have) != 0) {
+                return;
+            }
+            int id = dict.wordId(child);
+            if (id != -1 && length >= 3 && found[id] != solve) {
+                found[id] = solve;
+                result.add(id, result.strings ? new String(word, 0, length) : null, points(length));
             }
-            char c = key.charAt(d);
-            if (x.next[c - 'A'] == null) {
-                x.next[c - 'A'] = new Node(R, d + 1);
+            if (dict.hasChildren(child)) {
+                marked[cell >>> 6] |= 1L << cell;
+                for (int k = grid.offsets[cell]; k < grid.offsets[cell + 1]; ++k) {
+                    int next = grid.neighbors[k];
+                    if ((marked[next >>> 6] & (1L << next)) == 0) {
+                        boardDFS(child, length, next, result);
+                    }
+                }
+                marked[cell >>> 6] &= ~(1L << cell);
             }
-            x.hasChild = true;
-            x.next[c - 'A'] = put(x.next[c - 'A'], key, val, d + 1);
-            return x;
+        }
+    }
+
+    // fills parts[p] with the words of the paths starting in cells
+    // [p * CELLS_PER_TASK, (p + 1) * CELLS_PER_TASK) for every p in [from, to),
+    // splitting the range in halves down to single parts; a worker never waits
+    // for another task in the middle of a solve, so the tasks can share its Search
+    private class CellsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Grid grid;
+        private final int[] letters;
+        private final Found[] parts;
+        private final int from, to;
+
+        CellsTask(Grid grid, int[] letters, Found[] parts, int from, int to) {
+            this.grid = grid;
+            this.letters = letters;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                int cell = from * CELLS_PER_TASK;
+                int last = Math.min(cell + CELLS_PER_TASK, grid.cells());
+                parts[from] = searches.get().solve(grid, letters, cell, last, new Found(true));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CellsTask(grid, letters, parts, from, mid),
+                      new CellsTask(grid, letters, parts, mid, to));
         }
     }
 
     // Initializes the data structure using the given array of strings as the dictionary
     // You can assume each word in the dictionary contains only the uppercase letters A through Z
     public BoggleSolver(String[] dictionary) {
-        dict = new TwentySixTrieST<Integer>();
-        for (int i = 0; i < dictionary.length; ++i) {
-            dict.put(dictionary[i], i);
-        }
-        words = new HashSet<String>();
+        this(new DoubleArrayTrie(dictionary));
+    }
+
+    // shares dict, which is immutable, instead of building another trie
+    public BoggleSolver(DoubleArrayTrie dict) {
+        this.dict = dict;
+    }
+
+    public DoubleArrayTrie dictionary() {
+        return dict;
     }
 
     // Returns the set of all valid words in the given Boggle board, as an Iterable
     public Iterable<String> getAllValidWords(BoggleBoard board) {
-        words.clear();
-        Queue<String> queue = new Queue<String>();
-        boolean[][] marked = new boolean[board.rows()][board.cols()];
-        for (int i = 0; i < board.rows(); ++i) {
-            for (int j = 0; j < board.cols(); ++j) {
-                boardDFS(new StringBuilder(), null, i, j, marked, queue, board);
+        return searches.get().solve(board);
+    }
+
+    // same as getAllValidWords(board), in the same order, with the paths from
+    // different starting cells searched in parallel on pool, for large boards
+    public Iterable<String> getAllValidWords(BoggleBoard board, ForkJoinPool pool) {
+        Search search = searches.get();
+        Grid grid = search.grid(board.rows(), board.cols());
+        Found[] parts = new Found[(grid.cells() + CELLS_PER_TASK - 1) / CELLS_PER_TASK];
+        if (parts.length == 0) {
+            return new Found(true);
+        }
+        pool.invoke(new CellsTask(grid, grid.letters(board), parts, 0, parts.length));
+        // the first occurrences in cell order, the order of a serial solve
+        return search.merge(parts);
+    }
+
+    // the valid words of board in the order of getAllValidWords(board), found
+    // lazily: every step of an iteration searches only up to the next word, so
+    // stopping early skips the rest of the search
+    public Iterable<String> words(final BoggleBoard board) {
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new WordIterator(board);
             }
+        };
+    }
+
+    // the first limit words of words(board), after which the search stops
+    public Iterable<String> getAllValidWords(BoggleBoard board, int limit) {
+        if (limit < 0) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        Queue<String> queue = new Queue<String>();
+        Iterator<String> words = new WordIterator(board);
+        while (queue.size() < limit && words.hasNext()) {
+            queue.enqueue(words.next());
         }
         return queue;
     }
 
-    private void boardDFS(StringBuilder word, Node node, int i, int j, boolean[][] marked, Queue<String> queue, BoggleBoard board) {
-        if (!marked[i][j]) {
-            marked[i][j] = true;
-            word.append(board.getLetter(i, j));
-            if (board.getLetter(i, j) == 'Q') {
-                word.append("U");
-            }
-            String str = word.toString();
-            if (str.length() >= 3 && dict.contains(str, node) && !words.contains(str)) {
-                words.add(str);
-                queue.enqueue(str);
-            }
-            Node childNode = dict.searchPrefix(str, node);
-            if (childNode != null && childNode.hasChild) {
-                if (i != 0) {
-                    boardDFS(word, childNode, i - 1, j, marked, queue, board);
-                    if (j != 0) {
-                        boardDFS(word, childNode, i - 1, j - 1, marked, queue, board);
-                    }
-                    if (j != board.cols() - 1) {
-                        boardDFS(word, childNode, i - 1, j + 1, marked, queue, board);
-                    }
-                }
-                if (i != board.rows() - 1) {
-                    boardDFS(word, childNode, i + 1, j, marked, queue, board);
-                    if (j != 0) {
-                        boardDFS(word, childNode, i + 1, j - 1, marked, queue, board);
+    // total score of the valid words of board, without building any of them
+    public int scoreOf(BoggleBoard board) {
+        Search search = searches.get();
+        Grid grid = search.grid(board.rows(), board.cols());
+        return search.solve(grid, grid.letters(board), 0, grid.cells(), new Found(false)).score();
+    }
+
+    // the DFS of Search.boardDFS() with an explicit stack, so that it can stop
+    // at every word; the stack holds, per cell of the current path, the cell,
+    // its trie state, the length of the word so far and the next neighbour to
+    // try, and every iteration has its own scratch space
+    private class WordIterator implements Iterator<String> {
+        private final Grid grid;
+        private final int[] letters;
+        private final long have;
+        private final java.util.BitSet found = new java.util.BitSet();
+        private final long[] marked;
+        private final char[] word;
+        private final int[] cells, states, lengths, next;
+        private int top = -1;
+        private int start = 0;   // next starting cell
+        private String pending;  // the next word, null if not found yet
+
+        WordIterator(BoggleBoard board) {
+            grid = searches.get().grid(board.rows(), board.cols());
+            letters = grid.letters(board);
+            have = Grid.have(letters);
+            int n = grid.cells();
+            marked = new long[(n + 63) >>> 6];
+            word = new char[2 * n];
+            cells = new int[n];
+            states = new int[n];
+            lengths = new int[n];
+            next = new int[n];
+        }
+
+        public boolean hasNext() {
+            while (pending == null) {
+                if (top >= 0) {
+                    int cell = cells[top];
+                    if (next[top] < grid.offsets[cell + 1]) {
+                        int neighbor = grid.neighbors[next[top]++];
+                        if ((marked[neighbor >>> 6] & (1L << neighbor)) == 0) {
+                            visit(neighbor, states[top], lengths[top]);
+                        }
                     }
-                    if (j != board.cols() - 1) {
-                        boardDFS(word, childNode, i + 1, j + 1, marked, queue, board);
+                    else {
+                        marked[cell >>> 6] &= ~(1L << cell);
+                        --top;
                     }
                 }
-                if (j != 0) {
-                    boardDFS(word, childNode, i, j - 1, marked, queue, board);
+                else if (start < letters.length) {
+                    visit(start++, dict.root(), 0);
                 }
-                if (j != board.cols() - 1) {
-                    boardDFS(word, childNode, i, j + 1, marked, queue, board);
+                else {
+                    return false;
                 }
             }
-            if (word.toString().endsWith("QU")) {
-                word.delete(word.length() - 2, word.length());
+            return true;
+        }
+
+        // steps from state into cell, and pushes it if longer words go on from there
+        private void visit(int cell, int state, int length) {
+            int letter = letters[cell];
+            int child = dict.child(state, letter);
+            word[length++] = (char) ('A' + letter);
+            if (letter == 'Q' - 'A' && child != -1) {
+                child = dict.child(child, 'U' - 'A');
+                word[length++] = 'U';
             }
-            else {
-                word.deleteCharAt(word.length() - 1);
+            if (child == -1 || (dict.need(child) & ~have) != 0) {
+                return;
             }
-            marked[i][j] = false;
+            int id = dict.wordId(child);
+            if (id != -1 && length >= 3 && !found.get(id)) {
+                found.set(id);
+                pending = new String(word, 0, length);
+            }
+            if (dict.hasChildren(child)) {
+                marked[cell >>> 6] |= 1L << cell;
+                ++top;
+                cells[top] = cell;
+                states[top] = child;
+                lengths[top] = length;
+                next[top] = grid.offsets[cell];
+            }
+        }
+
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String word = pending;
+            pending = null;
+            return word;
+        }
+
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException();
+        }
+    }
+
+    // the valid words of every board, in the order of boards, solved on pool
+    // while the caller goes through them; boards are read as results are taken,
+    // and only a few per thread of pool are solved ahead, so boards may be endless
+    public Iterable<Iterable<String>> solveAll(final Iterable<BoggleBoard> boards, final ForkJoinPool pool) {
+        return new Iterable<Iterable<String>>() {
+            public Iterator<Iterable<String>> iterator() {
+                return new SolveIterator(boards.iterator(), pool);
+            }
+        };
+    }
+
+    private class SolveIterator implements Iterator<Iterable<String>> {
+        private final Iterator<BoggleBoard> boards;
+        private final ForkJoinPool pool;
+        private final ArrayDeque<ForkJoinTask<Iterable<String>>> ahead = new ArrayDeque<ForkJoinTask<Iterable<String>>>();
+
+        SolveIterator(Iterator<BoggleBoard> boards, ForkJoinPool pool) {
+            this.boards = boards;
+            this.pool = pool;
+        }
+
+        public boolean hasNext() {
+            while (ahead.size() < BOARDS_AHEAD * pool.getParallelism() && boards.hasNext()) {
+                final BoggleBoard board = boards.next();
+                ahead.add(pool.submit(new Callable<Iterable<String>>() {
+                    public Iterable<String> call() {
+                        return getAllValidWords(board);
+                    }
+                }));
+            }
+            return !ahead.isEmpty();
+        }
+
+        public Iterable<String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return ahead.remove().join();
+        }
+
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException();
         }
-        return;
     }
 
     // Returns the score of the given word if it is in the dictionary, zero otherwise
     // You can assume the word contains only the uppercase letters A through Z
     public int scoreOf(String word) {
-        if (dict.contains(word, null)) {
-            switch (word.length()) {
-            case 0:
-            case 1:
-            case 2:
-                return 0;
-            case 3:
-            case 4:
-                return 1;
-            case 5:
-                return 2;
-            case 6:
-                return 3;
-            case 7:
-                return 5;
-            default:
-                return 11;
-            }
+        if (dict.contains(word)) {
+            return points(word.length());
         }
         else {
             return 0;
         }
     }
 
+    // score of a word of the given length
+    static int points(int length) {
+        switch (length) {
+        case 0:
+        case 1:
+        case 2:
+            return 0;
+        case 3:
+        case 4:
+            return 1;
+        case 5:
+            return 2;
+        case 6:
+            return 3;
+        case 7:
+            return 5;
+        default:
+            return 11;
+        }
+    }
+
+    // for BoggleOptimizer: the distinct words on the paths that start in cell of
+    // an M-by-N board with the given letters (0 for A through 25 for Z), as ids
+    // and scores without Strings; every cell those paths look at is set in
+    // footprint, and only a change to one of those can change the words
+    Found wordsFrom(int M, int N, int[] letters, int cell, long[] footprint) {
+        Search search = searches.get();
+        search.footprint = footprint;
+        try {
+            return search.solve(search.grid(M, N), letters, cell, cell + 1, new Found(false));
+        }
+        finally {
+            search.footprint = null;
+        }
+    }
+
     public static void main(String[] args) {
         In in = new In(args[0]);
         String[] dictionary = in.readAllStrings();
@@ -0,0 +1,317 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// an immutable trie of words over the letters A through Z, laid out as a
+// double array: the child of state s by letter c (0 for A through 25 for Z)
+// is t = base[s] + c if check[t] == s, and there is none otherwise; base[s]
+// is -1 if s has no children, and word[s] is the id of the word spelled by
+// the path to s, -1 if it is not a word; the ids number the distinct words
+// 0 through size() - 1 in alphabetical order; need[s] is the signature of the
+// letters that every word through s has, see signature()
+public class DoubleArrayTrie {
+    private static final int R = 26;
+    private static final int ROOT = 0;
+    // first int of an image file, "DAT" followed by the format version
+    private static final int IMAGE_MAGIC = 0x44415402;
+
+    private int[] base;
+    private int[] check;
+    private int[] word;
+    private long[] need;
+    private int states;
+    private int size;
+
+    public DoubleArrayTrie(String[] words) {
+        String[] sorted = words.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; ++i) {
+            if (n == 0 || !sorted[n - 1].equals(sorted[i])) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            for (int d = 0; d < sorted[i].length(); ++d) {
+                char c = sorted[i].charAt(d);
+                if (c < 'A' || c > 'Z') {
+                    throw new java.lang.IllegalArgumentException("not an uppercase word: " + sorted[i]);
+                }
+            }
+        }
+
+        int capacity = 2 * R;
+        base = new int[capacity];
+        check = new int[capacity];
+        word = new int[capacity];
+        need = new long[capacity];
+        Arrays.fill(check, -1);
+        BitSet used = new BitSet();
+        used.set(ROOT);
+        check[ROOT] = ROOT;
+        states = 1;
+        place(ROOT, sorted, 0, n, 0, used, new int[] { 1 });
+
+        // every base + c stays within check, so child() needs no bounds test
+        int length = used.length() + R;
+        base = Arrays.copyOf(base, length);
+        check = Arrays.copyOf(check, length);
+        word = Arrays.copyOf(word, length);
+        need = Arrays.copyOf(need, length);
+        for (int t = used.length(); t < length; ++t) {
+            check[t] = -1;
+        }
+        size = n;
+    }
+
+    private DoubleArrayTrie(int[] base, int[] check, int[] word, long[] need, int states, int size) {
+        this.base = base;
+        this.check = check;
+        this.word = word;
+        this.need = need;
+        this.states = states;
+        this.size = size;
+    }
+
+    // writes a binary image of this trie that load() reads back without building anything:
+    // magic, size(), states(), the length n of the arrays, then base[n], check[n], word[n] and need[n]
+    public void save(String image) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(image), 1 << 16));
+            try {
+                out.writeInt(IMAGE_MAGIC);
+                out.writeInt(size);
+                out.writeInt(states);
+                out.writeInt(check.length);
+                for (int[] a : new int[][] { base, check, word }) {
+                    for (int x : a) {
+                        out.writeInt(x);
+                    }
+                }
+                for (long x : need) {
+                    out.writeLong(x);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            throw new java.lang.IllegalArgumentException("could not write " + image, e);
+        }
+    }
+
+    // reads an image written by save(), memory-mapping the file and copying the arrays out in bulk;
+    // this is still linear in the size of the trie, in time and in heap, but it is a plain copy with
+    // no parsing or placing of states, and it keeps the arrays on the heap so that child(), the inner
+    // step of every Boggle search, stays an array access rather than a buffer read
+    public static DoubleArrayTrie load(String image) {
+        MappedByteBuffer buffer;
+        try {
+            RandomAccessFile file = new RandomAccessFile(image, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch (IOException e) {
+            throw new java.lang.IllegalArgumentException("could not read " + image, e);
+        }
+        IntBuffer in = buffer.asIntBuffer();
+        if (in.remaining() < 4 || in.get() != IMAGE_MAGIC) {
+            throw new java.lang.IllegalArgumentException(image + " is not a trie image");
+        }
+        int size = in.get();
+        int states = in.get();
+        int length = in.get();
+        if (length < R || buffer.remaining() != 16 + 20L * length) {
+            throw new java.lang.IllegalArgumentException(image + " is truncated");
+        }
+        int[] base = new int[length];
+        int[] check = new int[length];
+        int[] word = new int[length];
+        in.get(base);
+        in.get(check);
+        in.get(word);
+        long[] need = new long[length];
+        buffer.position(16 + 12 * length);
+        buffer.asLongBuffer().get(need);
+
+        // every value child() and wordId() may read must stay in bounds; they
+        // only read base and word of the slots that hold a state, check[t] != -1
+        if (size < 0 || size > states || states > length || check[ROOT] != ROOT) {
+            throw new java.lang.IllegalArgumentException(image + " is corrupted");
+        }
+        for (int t = 0; t < length; ++t) {
+            if (check[t] < -1 || check[t] >= length) {
+                throw new java.lang.IllegalArgumentException(image + " is corrupted");
+            }
+            if (check[t] != -1 && (base[t] != -1 && (base[t] < 0 || base[t] + R > length)
+                                   || word[t] < -1 || word[t] >= size)) {
+                throw new java.lang.IllegalArgumentException(image + " is corrupted");
+            }
+        }
+        return new DoubleArrayTrie(base, check, word, need, states, size);
+    }
+
+    // fills in state s, whose path spells the first d letters of the sorted
+    // words[lo, hi), and then its children; free[0] is the lowest slot that may be free
+    private void place(int s, String[] words, int lo, int hi, int d, BitSet used, int[] free) {
+        word[s] = -1;
+        need[s] = -1L;
+        // lo == hi only for the root of an empty dictionary
+        if (lo < hi && words[lo].length() == d) {
+            need[s] = signature(words[lo]);
+            word[s] = lo++;
+        }
+        if (lo == hi) {
+            base[s] = -1;
+            return;
+        }
+
+        // the letters of the children, and where the words of each start
+        int[] letters = new int[R];
+        int[] starts = new int[R + 1];
+        int k = 0;
+        for (int i = lo; i < hi; ++i) {
+            int c = words[i].charAt(d) - 'A';
+            if (k == 0 || letters[k - 1] != c) {
+                letters[k] = c;
+                starts[k++] = i;
+            }
+        }
+        starts[k] = hi;
+
+        // the lowest base whose slots for all these letters are free
+        free[0] = used.nextClearBit(free[0]);
+        int b = Math.max(free[0] - letters[0], 1);
+        for (boolean fits = false; !fits; ) {
+            fits = true;
+            for (int i = 0; i < k && fits; ++i) {
+                fits = !used.get(b + letters[i]);
+            }
+            if (!fits) {
+                b = used.nextClearBit(b + letters[0] + 1) - letters[0];
+            }
+        }
+        base[s] = b;
+        int last = b + letters[k - 1];
+        if (last >= check.length) {
+            int capacity = Math.max(2 * check.length, last + 1);
+            base = Arrays.copyOf(base, capacity);
+            word = Arrays.copyOf(word, capacity);
+            need = Arrays.copyOf(need, capacity);
+            int old = check.length;
+            check = Arrays.copyOf(check, capacity);
+            Arrays.fill(check, old, capacity, -1);
+        }
+        for (int i = 0; i < k; ++i) {
+            used.set(b + letters[i]);
+            check[b + letters[i]] = s;
+        }
+        states += k;
+        for (int i = 0; i < k; ++i) {
+            place(b + letters[i], words, starts[i], starts[i + 1], d + 1, used, free);
+            need[s] &= need[b + letters[i]];
+        }
+    }
+
+    private static long signature(String word) {
+        int[] counts = new int[R];
+        for (int d = 0; d < word.length(); ++d) {
+            ++counts[word.charAt(d) - 'A'];
+        }
+        return signature(counts);
+    }
+
+    // the signature of a multiset of letters with counts[c] copies of letter c:
+    // bit c is set if there is at least one, and bit 32 + c if at least two;
+    // a word whose signature has a bit that the signature of a board lacks
+    // needs more copies of some letter than the board has
+    public static long signature(int[] counts) {
+        long signature = 0;
+        for (int c = 0; c < R; ++c) {
+            if (counts[c] >= 1) {
+                signature |= 1L << c;
+            }
+            if (counts[c] >= 2) {
+                signature |= 1L << (32 + c);
+            }
+        }
+        return signature;
+    }
+
+    // the state of the empty prefix
+    public int root() {
+        return ROOT;
+    }
+
+    // the child of state s by letter c, 0 for A through 25 for Z; -1 if there is none
+    public int child(int s, int c) {
+        int t = base[s] + c;
+        return base[s] >= 0 && check[t] == s ? t : -1;
+    }
+
+    // does some longer word start with the prefix of state s?
+    public boolean hasChildren(int s) {
+        return base[s] >= 0;
+    }
+
+    // the bits that the signature of every word through state s has, see signature()
+    public long need(int s) {
+        return need[s];
+    }
+
+    // id of the word spelled by state s, -1 if it is not a word
+    public int wordId(int s) {
+        return word[s];
+    }
+
+    // id of key, -1 if it is not in the trie
+    public int get(String key) {
+        int s = ROOT;
+        for (int d = 0; d < key.length() && s != -1; ++d) {
+            int c = key.charAt(d) - 'A';
+            if (c < 0 || c >= R) {
+                return -1;
+            }
+            s = child(s, c);
+        }
+        return s == -1 ? -1 : word[s];
+    }
+
+    public boolean contains(String key) {
+        return get(key) != -1;
+    }
+
+    // number of distinct words
+    public int size() {
+        return size;
+    }
+
+    // number of states, that is of distinct prefixes including the empty one
+    public int states() {
+        return states;
+    }
+
+    // compiles the words of a dictionary file into a trie image for load()
+    public static void main(String[] args) {
+        Stopwatch timer = new Stopwatch();
+        DoubleArrayTrie trie = new DoubleArrayTrie(new In(args[0]).readAllStrings());
+        StdOut.println("built " + trie.size() + " words, " + trie.states() + " states in " + timer.elapsedTime() + " seconds");
+        trie.save(args[1]);
+        timer = new Stopwatch();
+        trie = load(args[1]);
+        StdOut.println("loaded " + args[1] + " in " + timer.elapsedTime() + " seconds");
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// an immutable digraph in compressed sparse row form: the vertices adjacent
+// from v are targets[offsets[v]] through targets[offsets[v + 1] - 1]
+public class CSRDigraph {
+    // vertices handled by one task of the parallel cycle check
+    private static final int VERTICES_PER_TASK = 1 << 12;
+
+    private final int V;
+    private final int[] offsets;
+    private final int[] targets;
+
+    // wraps the given arrays, which must not be modified afterwards
+    public CSRDigraph(int[] offsets, int[] targets) {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != targets.length) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        V = offsets.length - 1;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    // copy of G, keeping the order of every adjacency list
+    public CSRDigraph(Digraph G) {
+        V = G.V();
+        offsets = new int[V + 1];
+        targets = new int[G.E()];
+        int e = 0;
+        for (int v = 0; v < V; ++v) {
+            for (int w : G.adj(v)) {
+                targets[e++] = w;
+            }
+            offsets[v + 1] = e;
+        }
+    }
+
+    // digraph with V vertices and the E edges from[i]->to[i], in that order
+    public CSRDigraph(int V, int[] from, int[] to, int E) {
+        this.V = V;
+        offsets = new int[V + 1];
+        targets = new int[E];
+        for (int i = 0; i < E; ++i) {
+            if (from[i] < 0 || from[i] >= V || to[i] < 0 || to[i] >= V) {
+                throw new java.lang.IndexOutOfBoundsException();
+            }
+            ++offsets[from[i] + 1];
+        }
+        for (int v = 0; v < V; ++v) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, V);
+        for (int i = 0; i < E; ++i) {
+            targets[next[from[i]]++] = to[i];
+        }
+    }
+
+    // a copy of this digraph grown to V vertices, with the n edges from[i]->to[i]
+    // added after the edges already leaving the same vertices
+    public CSRDigraph withEdges(int V, int[] from, int[] to, int n) {
+        if (V < this.V) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        int[] offsets = new int[V + 1];
+        for (int i = 0; i < n; ++i) {
+            if (from[i] < 0 || from[i] >= V || to[i] < 0 || to[i] >= V) {
+                throw new java.lang.IndexOutOfBoundsException();
+            }
+            ++offsets[from[i] + 1];
+        }
+        for (int v = 0; v < V; ++v) {
+            offsets[v + 1] += offsets[v] + (v < this.V ? outdegree(v) : 0);
+        }
+        int[] targets = new int[offsets[V]];
+        int[] next = new int[V];
+        for (int v = 0; v < V; ++v) {
+            next[v] = offsets[v];
+            if (v < this.V) {
+                System.arraycopy(this.targets, this.offsets[v], targets, next[v], outdegree(v));
+                next[v] += outdegree(v);
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            targets[next[from[i]]++] = to[i];
+        }
+        return new CSRDigraph(offsets, targets);
+    }
+
+    public int V() {
+        return V;
+    }
+
+    public int E() {
+        return targets.length;
+    }
+
+    public int outdegree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    // the digraph with every edge reversed
+    public CSRDigraph reverse() {
+        int[] from = new int[targets.length];
+        for (int v = 0; v < V; ++v) {
+            for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+                from[i] = v;
+            }
+        }
+        return new CSRDigraph(V, targets, from, targets.length);
+    }
+
+    // does the digraph have a directed cycle? (Kahn's algorithm, so no deep recursion)
+    public boolean hasCycle() {
+        int[] indegree = new int[V];
+        for (int i = 0; i < targets.length; ++i) {
+            ++indegree[targets[i]];
+        }
+        int[] queue = new int[V];
+        int head = 0, tail = 0;
+        for (int v = 0; v < V; ++v) {
+            if (indegree[v] == 0) {
+                queue[tail++] = v;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+                if (--indegree[targets[i]] == 0) {
+                    queue[tail++] = targets[i];
+                }
+            }
+        }
+        return tail < V;
+    }
+
+    // same as hasCycle(), but removes the vertices without incoming edges
+    // one level at a time, each level in parallel on pool
+    public boolean hasCycle(ForkJoinPool pool) {
+        AtomicIntegerArray indegree = new AtomicIntegerArray(V);
+        pool.invoke(new CountIndegrees(indegree, 0, V));
+        int[] level = new int[V];
+        int n = 0;
+        for (int v = 0; v < V; ++v) {
+            if (indegree.get(v) == 0) {
+                level[n++] = v;
+            }
+        }
+        level = Arrays.copyOf(level, n);
+        int removed = 0;
+        while (level.length > 0) {
+            removed += level.length;
+            level = pool.invoke(new RemoveLevel(indegree, level, 0, level.length));
+        }
+        return removed < V;
+    }
+
+    // adds the edges leaving [lo, hi) to indegree
+    private class CountIndegrees extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final AtomicIntegerArray indegree;
+        private final int lo, hi;
+
+        CountIndegrees(AtomicIntegerArray indegree, int lo, int hi) {
+            this.indegree = indegree;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= VERTICES_PER_TASK) {
+                for (int i = offsets[lo]; i < offsets[hi]; ++i) {
+                    indegree.incrementAndGet(targets[i]);
+                }
+            }
+            else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new CountIndegrees(indegree, lo, mid), new CountIndegrees(indegree, mid, hi));
+            }
+        }
+    }
+
+    // removes the edges leaving level[lo, hi) and returns the vertices left without incoming edges
+    private class RemoveLevel extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        private final AtomicIntegerArray indegree;
+        private final int[] level;
+        private final int lo, hi;
+
+        RemoveLevel(AtomicIntegerArray indegree, int[] level, int lo, int hi) {
+            this.indegree = indegree;
+            this.level = level;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (hi - lo <= VERTICES_PER_TASK) {
+                int[] next = new int[16];
+                int n = 0;
+                for (int j = lo; j < hi; ++j) {
+                    int v = level[j];
+                    for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+                        if (indegree.decrementAndGet(targets[i]) == 0) {
+                            if (n == next.length) {
+                                next = Arrays.copyOf(next, 2 * n);
+                            }
+                            next[n++] = targets[i];
+                        }
+                    }
+                }
+                return Arrays.copyOf(next, n);
+            }
+            int mid = (lo + hi) >>> 1;
+            RemoveLevel left = new RemoveLevel(indegree, level, lo, mid);
+            left.fork();
+            int[] right = new RemoveLevel(indegree, level, mid, hi).compute();
+            int[] leftNext = left.join();
+            int[] next = Arrays.copyOf(leftNext, leftNext.length + right.length);
+            System.arraycopy(right, 0, next, leftNext.length, right.length);
+            return next;
+        }
+    }
+
+    // the backing arrays, for traversals that walk them directly; not to be modified
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// scores a stream of noun pairs with their WordNet distances; the pairs are
+// read in batches, every distinct noun of a batch gets one BFS whose
+// ancestors are shared by all pairs it appears in, and both the BFS and the
+// pairs of a batch are spread over a ForkJoinPool; results are written in
+// input order as soon as their batch is done
+public class DistanceScorer {
+    // pairs or nouns handled by one task
+    private static final int ITEMS_PER_TASK = 64;
+
+    private final WordNet wordnet;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private long pairs;
+    private long nanos;
+
+    // a task over the indices [lo, hi), split in halves until small enough
+    private abstract static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int lo, hi;
+
+        RangeTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        abstract RangeTask split(int lo, int hi);
+
+        abstract void compute(int i);
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= ITEMS_PER_TASK) {
+                for (int i = lo; i < hi; ++i) {
+                    compute(i);
+                }
+            }
+            else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(split(lo, mid), split(mid, hi));
+            }
+        }
+    }
+
+    public DistanceScorer(WordNet wordnet, ForkJoinPool pool, int batchSize) {
+        if (batchSize <= 0) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        this.wordnet = wordnet;
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    // writes "nounA nounB distance" to out for every pair { nounA, nounB }, in
+    // input order, and returns the number of pairs scored
+    public long score(Iterator<String[]> input, PrintWriter out) {
+        long start = System.nanoTime();
+        long count = 0;
+        List<String[]> batch = new ArrayList<String[]>(batchSize);
+        while (input.hasNext()) {
+            batch.add(input.next());
+            if (batch.size() == batchSize || !input.hasNext()) {
+                int[] distances = score(batch);
+                for (int i = 0; i < distances.length; ++i) {
+                    out.println(batch.get(i)[0] + " " + batch.get(i)[1] + " " + distances[i]);
+                }
+                out.flush();
+                count += batch.size();
+                batch.clear();
+            }
+        }
+        synchronized (this) {
+            pairs += count;
+            nanos += System.nanoTime() - start;
+        }
+        return count;
+    }
+
+    // the distances of one batch of pairs
+    private int[] score(List<String[]> batch) {
+        // number the distinct nouns, so each of them is searched from only once
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        List<String> nouns = new ArrayList<String>();
+        int[] a = new int[batch.size()];
+        int[] b = new int[batch.size()];
+        for (int i = 0; i < batch.size(); ++i) {
+            String[] pair = batch.get(i);
+            a[i] = number(pair[0], ids, nouns);
+            b[i] = number(pair[1], ids, nouns);
+        }
+
+        SAP.Ancestors[] ancestors = new SAP.Ancestors[nouns.size()];
+        pool.invoke(newAncestorsTask(nouns, ancestors, 0, ancestors.length));
+        int[] distances = new int[batch.size()];
+        pool.invoke(newDistancesTask(ancestors, a, b, distances, 0, distances.length));
+        return distances;
+    }
+
+    private int number(String noun, Map<String, Integer> ids, List<String> nouns) {
+        Integer id = ids.get(noun);
+        if (id == null) {
+            if (!wordnet.isNoun(noun)) {
+                throw new java.lang.IllegalArgumentException("not a WordNet noun: " + noun);
+            }
+            id = nouns.size();
+            ids.put(noun, id);
+            nouns.add(noun);
+        }
+        return id;
+    }
+
+    private RangeTask newAncestorsTask(final List<String> nouns, final SAP.Ancestors[] ancestors, int lo, int hi) {
+        return new RangeTask(lo, hi) {
+            private static final long serialVersionUID = 1L;
+
+            RangeTask split(int lo, int hi) {
+                return newAncestorsTask(nouns, ancestors, lo, hi);
+            }
+
+            void compute(int i) {
+                ancestors[i] = wordnet.ancestors(nouns.get(i));
+            }
+        };
+    }
+
+    private static RangeTask newDistancesTask(final SAP.Ancestors[] ancestors, final int[] a, final int[] b,
+                                              final int[] distances, int lo, int hi) {
+        return new RangeTask(lo, hi) {
+            private static final long serialVersionUID = 1L;
+
+            RangeTask split(int lo, int hi) {
+                return newDistancesTask(ancestors, a, b, distances, lo, hi);
+            }
+
+            void compute(int i) {
+                distances[i] = SAP.path(ancestors[a[i]], ancestors[b[i]]).length();
+            }
+        };
+    }
+
+    // pairs scored per second over all calls to score() so far
+    public synchronized double pairsPerSecond() {
+        return nanos == 0 ? 0.0 : pairs * 1e9 / nanos;
+    }
+
+    // scores the pairs of nouns on the lines of a file, on the given number of threads
+    public static void main(String[] args) {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        final In in = new In(args[2]);
+        // skips blank lines, and rejects a line that is not two nouns
+        Iterator<String[]> pairs = new Iterator<String[]>() {
+            private int number = 0;
+            private String line = advance();
+
+            private String advance() {
+                String line;
+                do {
+                    line = in.readLine();
+                    ++number;
+                } while (line != null && line.trim().isEmpty());
+                return line;
+            }
+
+            public boolean hasNext() {
+                return line != null;
+            }
+
+            public String[] next() {
+                if (line == null) {
+                    throw new NoSuchElementException();
+                }
+                String[] pair = line.trim().split("\\s+");
+                if (pair.length != 2) {
+                    throw new java.lang.IllegalArgumentException("line " + number + ": expected two nouns, got \"" + line + "\"");
+                }
+                line = advance();
+                return pair;
+            }
+
+            public void remove() {
+                throw new java.lang.UnsupportedOperationException();
+            }
+        };
+        DistanceScorer scorer = new DistanceScorer(wordnet, pool, 1 << 14);
+        long n = scorer.score(pairs, new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16)));
+        pool.shutdown();
+        System.err.printf("%d pairs, %.0f pairs/second\n", n, scorer.pairsPerSecond());
+    }
+}
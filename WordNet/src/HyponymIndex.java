@@ -0,0 +1,173 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// descendant queries on a DAG of hypernym edges, going down its hyponym
+// (reversed) edges; a DFS of the hyponym edges from the roots numbers the
+// vertices in postorder, so that the descendants of v along the DFS tree have
+// exactly the ranks [treeLow[v], rank[v]] and all descendants of v have ranks
+// within [low[v], rank[v]]; the first interval proves descent, the second
+// rules it out, and only the queries left in between need a pruned search
+public class HyponymIndex {
+    private final int[] offsets, targets;  // the hyponym edges in CSR form
+    private final int[] rank, treeLow, low;
+
+    // G holds the hypernym edges and reverse the hyponym edges, that is G.reverse()
+    public HyponymIndex(CSRDigraph G, CSRDigraph reverse) {
+        int V = G.V();
+        offsets = reverse.offsets();
+        targets = reverse.targets();
+        rank = new int[V];
+        treeLow = new int[V];
+        low = new int[V];
+
+        // iterative DFS from the roots first, then from whatever is left if G has no single root
+        boolean[] marked = new boolean[V];
+        int[] stack = new int[V];
+        int[] edge = new int[V];
+        int count = 0;
+        for (int pass = 0; pass < 2; ++pass) {
+            for (int r = 0; r < V; ++r) {
+                if (marked[r] || (pass == 0 && G.outdegree(r) != 0)) {
+                    continue;
+                }
+                int top = 0;
+                stack[0] = r;
+                edge[0] = offsets[r];
+                marked[r] = true;
+                treeLow[r] = count;
+                while (top >= 0) {
+                    int v = stack[top];
+                    if (edge[top] < offsets[v + 1]) {
+                        int w = targets[edge[top]++];
+                        if (!marked[w]) {
+                            marked[w] = true;
+                            treeLow[w] = count;
+                            stack[++top] = w;
+                            edge[top] = offsets[w];
+                        }
+                    }
+                    else {
+                        // every descendant of v has its rank by now
+                        rank[v] = count++;
+                        low[v] = treeLow[v];
+                        for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+                            low[v] = Math.min(low[v], low[targets[i]]);
+                        }
+                        --top;
+                    }
+                }
+            }
+        }
+    }
+
+    // wraps the hyponym edges and the arrays of an index built before, as
+    // returned by the accessors below, which must not be modified afterwards
+    HyponymIndex(CSRDigraph reverse, int[] rank, int[] treeLow, int[] low) {
+        offsets = reverse.offsets();
+        targets = reverse.targets();
+        this.rank = rank;
+        this.treeLow = treeLow;
+        this.low = low;
+    }
+
+    // is x a descendant of y (or y itself)?
+    public boolean isDescendant(int x, int y) {
+        if (rank[x] >= treeLow[y] && rank[x] <= rank[y]) {
+            return true;
+        }
+        if (rank[x] < low[y] || rank[x] > rank[y]) {
+            return false;
+        }
+
+        // search down from y, skipping vertices whose intervals rule x out
+        BitSet marked = new BitSet();
+        int[] stack = new int[16];
+        int top = 0;
+        stack[0] = y;
+        marked.set(y);
+        while (top >= 0) {
+            int v = stack[top--];
+            for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+                int w = targets[i];
+                if (marked.get(w) || rank[x] < low[w] || rank[x] > rank[w]) {
+                    continue;
+                }
+                if (rank[x] >= treeLow[w]) {
+                    return true;
+                }
+                marked.set(w);
+                if (++top == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * top);
+                }
+                stack[top] = w;
+            }
+        }
+        return false;
+    }
+
+    // the descendants of the vertices in v[from, to), themselves included,
+    // enumerated lazily in depth-first order
+    public Iterable<Integer> descendants(final int[] v, final int from, final int to) {
+        return new Iterable<Integer>() {
+            public Iterator<Integer> iterator() {
+                return new DescendantIterator(v, from, to);
+            }
+        };
+    }
+
+    private class DescendantIterator implements Iterator<Integer> {
+        private final BitSet marked = new BitSet();
+        private int[] stack = new int[16];
+        private int top = -1;
+
+        DescendantIterator(int[] v, int from, int to) {
+            for (int i = to - 1; i >= from; --i) {
+                push(v[i]);
+            }
+        }
+
+        private void push(int w) {
+            if (!marked.get(w)) {
+                marked.set(w);
+                if (++top == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * top);
+                }
+                stack[top] = w;
+            }
+        }
+
+        public boolean hasNext() {
+            return top >= 0;
+        }
+
+        public Integer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int v = stack[top--];
+            for (int i = offsets[v + 1] - 1; i >= offsets[v]; --i) {
+                push(targets[i]);
+            }
+            return v;
+        }
+
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException();
+        }
+    }
+
+    // the backing arrays, for saving the index; not to be modified
+    int[] rank() {
+        return rank;
+    }
+
+    int[] treeLow() {
+        return treeLow;
+    }
+
+    int[] low() {
+        return low;
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.Arrays;
+
+// lowest common ancestors in the tree-shaped part of a digraph: a vertex is
+// a tree vertex if it and all of its ancestors have at most one outgoing
+// edge, so its ancestors form a single path to a root and the shortest
+// ancestral path between two tree vertices goes through their lowest common
+// ancestor; answers in O(1) from an Euler tour of the forest of tree vertices
+// and a sparse table of range minima over the depths along the tour
+public class LCAIndex {
+    private static final byte UNKNOWN = 0, TREE = 1, NOT_TREE = 2, ON_CHAIN = 3;
+
+    private final int[] root;      // root[v] = root of the tree containing v, -1 if v is not a tree vertex
+    private final int[] depth;     // depth[v] = distance from v to its root
+    private final int[] first;     // first[v] = index of the first visit of v on the tour
+    private final int[][] sparse;  // sparse[k][i] = shallowest vertex of tour[i, i + 2^k)
+    private int size;
+
+    public LCAIndex(CSRDigraph G) {
+        int V = G.V();
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+
+        // classify every vertex by walking up the single-parent chain until a
+        // classified vertex or a root; coming back to the chain means a cycle
+        byte[] state = new byte[V];
+        int[] chain = new int[V];
+        for (int v = 0; v < V; ++v) {
+            int n = 0;
+            int x = v;
+            byte s = UNKNOWN;
+            while (state[x] == UNKNOWN) {
+                int degree = G.outdegree(x);
+                if (degree > 1) {
+                    s = NOT_TREE;
+                    break;
+                }
+                chain[n++] = x;
+                state[x] = ON_CHAIN;
+                if (degree == 0) {
+                    s = TREE;
+                    break;
+                }
+                x = targets[offsets[x]];
+            }
+            if (s == UNKNOWN) {
+                s = state[x] == ON_CHAIN ? NOT_TREE : state[x];
+            }
+            else {
+                state[x] = s;
+            }
+            for (int i = 0; i < n; ++i) {
+                state[chain[i]] = s;
+            }
+        }
+
+        // children of every tree vertex, in CSR form
+        int[] childOffsets = new int[V + 1];
+        int count = 0;
+        for (int v = 0; v < V; ++v) {
+            if (state[v] == TREE) {
+                ++count;
+                if (G.outdegree(v) == 1) {
+                    ++childOffsets[targets[offsets[v]] + 1];
+                }
+            }
+        }
+        size = count;
+        for (int v = 0; v < V; ++v) {
+            childOffsets[v + 1] += childOffsets[v];
+        }
+        int[] children = new int[childOffsets[V]];
+        int[] next = Arrays.copyOf(childOffsets, V);
+        for (int v = 0; v < V; ++v) {
+            if (state[v] == TREE && G.outdegree(v) == 1) {
+                children[next[targets[offsets[v]]]++] = v;
+            }
+        }
+
+        // Euler tour of every tree, iteratively so that deep trees cannot overflow the stack
+        root = new int[V];
+        depth = new int[V];
+        first = new int[V];
+        Arrays.fill(root, -1);
+        int[] tour = new int[Math.max(1, 2 * count - 1)];
+        int length = 0;
+        int[] stack = new int[V];
+        int[] edge = new int[V];
+        for (int r = 0; r < V; ++r) {
+            if (state[r] != TREE || G.outdegree(r) != 0) {
+                continue;
+            }
+            int top = 0;
+            stack[0] = r;
+            edge[0] = childOffsets[r];
+            root[r] = r;
+            depth[r] = 0;
+            first[r] = length;
+            tour[length++] = r;
+            while (top >= 0) {
+                int v = stack[top];
+                if (edge[top] < childOffsets[v + 1]) {
+                    int c = children[edge[top]++];
+                    root[c] = r;
+                    depth[c] = depth[v] + 1;
+                    first[c] = length;
+                    tour[length++] = c;
+                    stack[++top] = c;
+                    edge[top] = childOffsets[c];
+                }
+                else if (--top >= 0) {
+                    tour[length++] = stack[top];
+                }
+            }
+        }
+
+        int levels = 1;
+        while ((1 << levels) <= length) {
+            ++levels;
+        }
+        sparse = new int[levels][];
+        sparse[0] = Arrays.copyOf(tour, length);
+        for (int k = 1; k < levels; ++k) {
+            int half = 1 << (k - 1);
+            int[] prev = sparse[k - 1];
+            int[] cur = new int[length - (1 << k) + 1];
+            for (int i = 0; i < cur.length; ++i) {
+                int a = prev[i], b = prev[i + half];
+                cur[i] = depth[a] <= depth[b] ? a : b;
+            }
+            sparse[k] = cur;
+        }
+    }
+
+    // wraps the arrays of an index built before, as returned by the accessors
+    // below, which must not be modified afterwards
+    LCAIndex(int[] root, int[] depth, int[] first, int[][] sparse) {
+        this.root = root;
+        this.depth = depth;
+        this.first = first;
+        this.sparse = sparse;
+        for (int r : root) {
+            if (r != -1) {
+                ++size;
+            }
+        }
+    }
+
+    // number of tree vertices
+    public int size() {
+        return size;
+    }
+
+    // is v a tree vertex?  vertices added to the digraph after the index was built are not
+    public boolean covers(int v) {
+        return v < root.length && root[v] != -1;
+    }
+
+    // stops treating v as a tree vertex, once edges added to the digraph have
+    // changed its ancestors; the tour of the others stays valid
+    public void exclude(int v) {
+        if (covers(v)) {
+            root[v] = -1;
+            --size;
+        }
+    }
+
+    // distance from tree vertex v to its root
+    public int depth(int v) {
+        return depth[v];
+    }
+
+    // lowest common ancestor of tree vertices v and w, -1 if they are in different trees
+    public int lca(int v, int w) {
+        if (root[v] != root[w]) {
+            return -1;
+        }
+        int lo = first[v], hi = first[w];
+        if (lo > hi) {
+            int t = lo;
+            lo = hi;
+            hi = t;
+        }
+        int k = 31 - Integer.numberOfLeadingZeros(hi - lo + 1);
+        int a = sparse[k][lo], b = sparse[k][hi - (1 << k) + 1];
+        return depth[a] <= depth[b] ? a : b;
+    }
+
+    // the backing arrays, for saving the index; not to be modified
+    int[] roots() {
+        return root;
+    }
+
+    int[] depths() {
+        return depth;
+    }
+
+    int[] firsts() {
+        return first;
+    }
+
+    int[][] sparse() {
+        return sparse;
+    }
+}
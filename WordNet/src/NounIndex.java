@@ -0,0 +1,300 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// an immutable index from nouns to synset ids; an open-addressing hash table
+// maps every noun to its noun id n, and the synsets of n, sorted, are
+// ids[offsets[n]] through ids[offsets[n + 1] - 1] of one flat array; the
+// other way round, the nouns of synset s are synsetNouns[synsetOffsets[s]]
+// through synsetNouns[synsetOffsets[s + 1] - 1]
+public class NounIndex {
+    private final String[] nouns;
+    private final int[] table;
+    private final int[] offsets;
+    private final int[] ids;
+    private final int[] synsetOffsets;
+    private final int[] synsetNouns;
+
+    // collects (noun, synset id) pairs, numbering the nouns in order of first appearance
+    public static class Builder {
+        private String[] nouns = new String[16];
+        private int[] table = newTable(32);
+        private int numNoun = 0;
+        private int[] pairNoun = new int[16];
+        private int[] pairId = new int[16];
+        private int numPair = 0;
+
+        public void add(String noun, int id) {
+            int slot = slot(nouns, table, noun);
+            int n = table[slot];
+            if (n == -1) {
+                n = numNoun++;
+                if (n == nouns.length) {
+                    nouns = Arrays.copyOf(nouns, 2 * n);
+                }
+                nouns[n] = noun;
+                table[slot] = n;
+                if (2 * numNoun > table.length) {
+                    rehash();
+                }
+            }
+            if (numPair == pairNoun.length) {
+                pairNoun = Arrays.copyOf(pairNoun, 2 * numPair);
+                pairId = Arrays.copyOf(pairId, 2 * numPair);
+            }
+            pairNoun[numPair] = n;
+            pairId[numPair] = id;
+            ++numPair;
+        }
+
+        private void rehash() {
+            table = newTable(2 * table.length);
+            for (int n = 0; n < numNoun; ++n) {
+                table[slot(nouns, table, nouns[n])] = n;
+            }
+        }
+
+        public NounIndex build() {
+            // counting sort of the pairs by noun, then sort and deduplicate every noun's ids
+            int[] offsets = new int[numNoun + 1];
+            for (int i = 0; i < numPair; ++i) {
+                ++offsets[pairNoun[i] + 1];
+            }
+            for (int n = 0; n < numNoun; ++n) {
+                offsets[n + 1] += offsets[n];
+            }
+            int[] next = Arrays.copyOf(offsets, numNoun);
+            int[] ids = new int[numPair];
+            for (int i = 0; i < numPair; ++i) {
+                ids[next[pairNoun[i]]++] = pairId[i];
+            }
+            int size = 0;
+            for (int n = 0; n < numNoun; ++n) {
+                int lo = offsets[n];
+                Arrays.sort(ids, lo, offsets[n + 1]);
+                offsets[n] = size;
+                for (int i = lo; i < offsets[n + 1]; ++i) {
+                    if (i == lo || ids[i] != ids[i - 1]) {
+                        ids[size++] = ids[i];
+                    }
+                }
+            }
+            offsets[numNoun] = size;
+            ids = Arrays.copyOf(ids, size);
+
+            // the same pairs sorted by synset, which keeps the nouns of every synset in noun id order
+            int numID = 0;
+            for (int i = 0; i < size; ++i) {
+                numID = Math.max(numID, ids[i] + 1);
+            }
+            int[] synsetOffsets = new int[numID + 1];
+            for (int i = 0; i < size; ++i) {
+                ++synsetOffsets[ids[i] + 1];
+            }
+            for (int s = 0; s < numID; ++s) {
+                synsetOffsets[s + 1] += synsetOffsets[s];
+            }
+            next = Arrays.copyOf(synsetOffsets, numID);
+            int[] synsetNouns = new int[size];
+            for (int n = 0; n < numNoun; ++n) {
+                for (int i = offsets[n]; i < offsets[n + 1]; ++i) {
+                    synsetNouns[next[ids[i]]++] = n;
+                }
+            }
+            return new NounIndex(Arrays.copyOf(nouns, numNoun), table, offsets, ids, synsetOffsets, synsetNouns);
+        }
+    }
+
+    // wraps the given arrays, as returned by the accessors below, which must not be modified afterwards
+    NounIndex(String[] nouns, int[] table, int[] offsets, int[] ids, int[] synsetOffsets, int[] synsetNouns) {
+        this.nouns = nouns;
+        this.table = table;
+        this.offsets = offsets;
+        this.ids = ids;
+        this.synsetOffsets = synsetOffsets;
+        this.synsetNouns = synsetNouns;
+    }
+
+    // a copy of this index where the nouns in words, new ones numbered after the
+    // existing nouns, also belong to synset id; this index stays as it is
+    public NounIndex with(String[] words, int id) {
+        if (id < 0) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        String[] nouns = this.nouns;
+        int[] table = this.table;
+        int numNoun = nouns.length;
+        int[] added = new int[words.length];   // ids of the nouns that gain synset id
+        int k = 0;
+        for (String word : words) {
+            int slot = slot(nouns, table, word);
+            int n = table[slot];
+            if (n == -1) {
+                if (nouns == this.nouns) {
+                    nouns = Arrays.copyOf(nouns, numNoun + words.length);
+                    table = table.clone();
+                }
+                n = numNoun++;
+                nouns[n] = word;
+                table[slot] = n;
+                if (2 * numNoun > table.length) {
+                    table = newTable(2 * table.length);
+                    for (int i = 0; i < numNoun; ++i) {
+                        table[slot(nouns, table, nouns[i])] = i;
+                    }
+                }
+            }
+            else if (n < this.nouns.length && Arrays.binarySearch(ids, offsets[n], offsets[n + 1], id) >= 0) {
+                continue;
+            }
+            added[k++] = n;
+        }
+        Arrays.sort(added, 0, k);
+        int m = 0;
+        for (int i = 0; i < k; ++i) {
+            if (m == 0 || added[m - 1] != added[i]) {
+                added[m++] = added[i];
+            }
+        }
+        if (m == 0) {
+            return this;
+        }
+
+        // insert id into the sorted synsets of every added noun
+        int[] offsets = new int[numNoun + 1];
+        int[] ids = new int[this.ids.length + m];
+        int size = 0;
+        for (int n = 0, j = 0; n < numNoun; ++n) {
+            offsets[n] = size;
+            int lo = n < this.nouns.length ? this.offsets[n] : this.ids.length;
+            int hi = n < this.nouns.length ? this.offsets[n + 1] : this.ids.length;
+            if (j < m && added[j] == n) {
+                int at = -Arrays.binarySearch(this.ids, lo, hi, id) - 1;
+                System.arraycopy(this.ids, lo, ids, size, at - lo);
+                size += at - lo;
+                ids[size++] = id;
+                System.arraycopy(this.ids, at, ids, size, hi - at);
+                size += hi - at;
+                ++j;
+            }
+            else {
+                System.arraycopy(this.ids, lo, ids, size, hi - lo);
+                size += hi - lo;
+            }
+        }
+        offsets[numNoun] = size;
+
+        // merge the added nouns, in noun id order, into the nouns of synset id
+        int numID = Math.max(synsetOffsets.length - 1, id + 1);
+        int[] synsetOffsets = new int[numID + 1];
+        int[] synsetNouns = new int[this.synsetNouns.length + m];
+        int end = this.synsetNouns.length;
+        int lo = id < this.synsetOffsets.length - 1 ? this.synsetOffsets[id] : end;
+        int hi = id < this.synsetOffsets.length - 1 ? this.synsetOffsets[id + 1] : end;
+        System.arraycopy(this.synsetNouns, 0, synsetNouns, 0, lo);
+        int i = lo, j = 0, at = lo;
+        while (i < hi || j < m) {
+            if (j == m || (i < hi && this.synsetNouns[i] < added[j])) {
+                synsetNouns[at++] = this.synsetNouns[i++];
+            }
+            else {
+                synsetNouns[at++] = added[j++];
+            }
+        }
+        System.arraycopy(this.synsetNouns, hi, synsetNouns, at, end - hi);
+        for (int s = 0; s <= numID; ++s) {
+            int old = s < this.synsetOffsets.length ? this.synsetOffsets[s] : end;
+            synsetOffsets[s] = s <= id ? old : old + m;
+        }
+        return new NounIndex(Arrays.copyOf(nouns, numNoun), table, offsets, ids, synsetOffsets, synsetNouns);
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    // the slot of table holding noun, or the empty slot where it belongs (linear probing)
+    private static int slot(String[] nouns, int[] table, String noun) {
+        int h = noun.hashCode();
+        h ^= h >>> 16;
+        int mask = table.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            if (table[i] == -1 || nouns[table[i]].equals(noun)) {
+                return i;
+            }
+        }
+    }
+
+    // number of distinct nouns
+    public int size() {
+        return nouns.length;
+    }
+
+    // noun id of noun, -1 if it is not a noun
+    public int indexOf(String noun) {
+        return table[slot(nouns, table, noun)];
+    }
+
+    public String noun(int n) {
+        return nouns[n];
+    }
+
+    // the nouns in order of noun id
+    public List<String> nouns() {
+        return Collections.unmodifiableList(Arrays.asList(nouns));
+    }
+
+    // number of synsets the noun with id n belongs to
+    public int synsetCount(int n) {
+        return offsets[n + 1] - offsets[n];
+    }
+
+    // the synsets of the noun with id n, as a view of the flat array
+    public Iterable<Integer> synsets(final int n) {
+        return new Iterable<Integer>() {
+            public java.util.Iterator<Integer> iterator() {
+                return new java.util.Iterator<Integer>() {
+                    private int i = offsets[n];
+
+                    public boolean hasNext() {
+                        return i < offsets[n + 1];
+                    }
+
+                    public Integer next() {
+                        if (!hasNext()) {
+                            throw new java.util.NoSuchElementException();
+                        }
+                        return ids[i++];
+                    }
+
+                    public void remove() {
+                        throw new java.lang.UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    // the backing arrays, for callers that walk them directly; not to be modified
+    int[] table() {
+        return table;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] ids() {
+        return ids;
+    }
+
+    int[] synsetOffsets() {
+        return synsetOffsets;
+    }
+
+    int[] synsetNouns() {
+        return synsetNouns;
+    }
+}
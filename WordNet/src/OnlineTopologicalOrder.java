@@ -0,0 +1,156 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// a topological order of a DAG kept up to date while vertices and edges are
+// added (Pearce and Kelly's algorithm): every edge v->w has ord[v] < ord[w],
+// and an edge that breaks the order only reorders the vertices between its
+// endpoints, or is refused if it would close a cycle
+public class OnlineTopologicalOrder {
+    private int[] ord;
+    private int V;
+    private int lowest;   // smallest position in use
+
+    // a topological order of G, which must be a DAG (Kahn's algorithm)
+    public OnlineTopologicalOrder(CSRDigraph G) {
+        V = G.V();
+        ord = new int[Math.max(16, V)];
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+        int[] indegree = new int[V];
+        for (int i = 0; i < targets.length; ++i) {
+            ++indegree[targets[i]];
+        }
+        int[] queue = new int[V];
+        int head = 0, tail = 0;
+        for (int v = 0; v < V; ++v) {
+            if (indegree[v] == 0) {
+                queue[tail++] = v;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head];
+            ord[v] = head++;
+            for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+                if (--indegree[targets[i]] == 0) {
+                    queue[tail++] = targets[i];
+                }
+            }
+        }
+        if (tail < V) {
+            throw new java.lang.IllegalArgumentException("not a DAG");
+        }
+        lowest = 0;
+    }
+
+    // the order with positions ord[0] through ord[ord.length - 1], as returned
+    // by positions(), and lowest the smallest of them, as returned by lowest()
+    OnlineTopologicalOrder(int[] ord, int lowest) {
+        V = ord.length;
+        this.ord = Arrays.copyOf(ord, Math.max(16, V));
+        this.lowest = lowest;
+    }
+
+    // position of v in the order
+    public int ord(int v) {
+        return ord[v];
+    }
+
+    // adds a vertex without incoming edges, placed before all others, and returns it
+    public int addVertex() {
+        if (V == ord.length) {
+            ord = Arrays.copyOf(ord, 2 * V);
+        }
+        ord[V] = --lowest;
+        return V++;
+    }
+
+    // makes room for edge v->w in the order of G, the digraph before the edge
+    // is added, whose reverse is reverse; returns false and changes nothing if
+    // w already reaches v, so that the edge would close a cycle
+    public boolean addEdge(int v, int w, CSRDigraph G, CSRDigraph reverse) {
+        if (v == w) {
+            return false;
+        }
+        if (ord[v] < ord[w]) {
+            return true;
+        }
+
+        // vertices reachable from w that come no later than v, and vertices
+        // reaching v that come no earlier than w; only those need to move
+        BitSet marked = new BitSet();
+        int[] forward = collect(w, v, ord[w], ord[v], G, marked);
+        if (forward == null) {
+            return false;
+        }
+        marked.clear();
+        int[] backward = collect(v, -1, ord[w], ord[v], reverse, marked);
+
+        // give their positions, in order, to the backward ones and then to the forward ones
+        sortByOrd(forward);
+        sortByOrd(backward);
+        int[] positions = new int[forward.length + backward.length];
+        for (int i = 0; i < backward.length; ++i) {
+            positions[i] = ord[backward[i]];
+        }
+        for (int i = 0; i < forward.length; ++i) {
+            positions[backward.length + i] = ord[forward[i]];
+        }
+        Arrays.sort(positions);
+        for (int i = 0; i < backward.length; ++i) {
+            ord[backward[i]] = positions[i];
+        }
+        for (int i = 0; i < forward.length; ++i) {
+            ord[forward[i]] = positions[backward.length + i];
+        }
+        return true;
+    }
+
+    // the vertices reachable from s in G through positions in [lo, hi], or null
+    // if that reaches t
+    private int[] collect(int s, int t, int lo, int hi, CSRDigraph G, BitSet marked) {
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+        int[] found = new int[16];
+        int n = 0;
+        found[n++] = s;
+        marked.set(s);
+        for (int head = 0; head < n; ++head) {
+            int x = found[head];
+            for (int i = offsets[x]; i < offsets[x + 1]; ++i) {
+                int y = targets[i];
+                if (marked.get(y) || ord[y] < lo || ord[y] > hi) {
+                    continue;
+                }
+                if (y == t) {
+                    return null;
+                }
+                marked.set(y);
+                if (n == found.length) {
+                    found = Arrays.copyOf(found, 2 * n);
+                }
+                found[n++] = y;
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    private void sortByOrd(int[] vertices) {
+        long[] packed = new long[vertices.length];
+        for (int i = 0; i < vertices.length; ++i) {
+            packed[i] = ((long) ord[vertices[i]] << 32) | vertices[i];
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < vertices.length; ++i) {
+            vertices[i] = (int) packed[i];
+        }
+    }
+
+    // the positions of the V vertices, for saving the order
+    int[] positions() {
+        return Arrays.copyOf(ord, V);
+    }
+
+    int lowest() {
+        return lowest;
+    }
+}
@@ -1,19 +1,28 @@
+import java.util.concurrent.ForkJoinPool;
+
 public class Outcast {
     private WordNet wordNet;
+    private ForkJoinPool pool;
 
     // constructor takes a WordNet object
     public Outcast(WordNet wordnet) {
         wordNet = wordnet;
     }
 
+    // computes the distances between the nouns in parallel on pool
+    public Outcast(WordNet wordnet, ForkJoinPool pool) {
+        wordNet = wordnet;
+        this.pool = pool;
+    }
+
     // given an array of WordNet nouns, return an outcast
     public String outcast(String[] nouns) {
-        int[][] distances = new int[nouns.length][nouns.length];
-        for (int i = 0; i < nouns.length; ++i) {
-            for (int j = i; j < nouns.length; ++j) {
-                distances[i][j] = wordNet.distance(nouns[i], nouns[j]);
-                distances[j][i] = distances[i][j];
-            }
+        int[][] distances;
+        if (pool == null) {
+            distances = wordNet.distances(nouns);
+        }
+        else {
+            distances = wordNet.distances(nouns, pool);
         }
 
         String noun = null;
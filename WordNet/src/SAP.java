@@ -1,113 +1,638 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class SAP {
-    private Digraph G;
-    private int length, ancestor;
+    // rows of a distance matrix filled by one fork/join task
+    private static final int ROWS_PER_TASK = 4;
+    // largest number of vertex pairs of two sets answered by LCA lookups instead of a search
+    private static final int MAX_TREE_PAIRS = 64;
+
+    // the digraph in CSR form, see CSRDigraph; replaced by update() as edges are added
+    private int V;
+    private int[] offsets, targets;
+    private final SAPCache cache;
+    // lowest common ancestors of the tree-shaped part of the digraph, null if there is none
+    private final LCAIndex lca;
+    // every thread gets its own scratch space, so one SAP can be shared by many threads
+    private final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+        @Override
+        protected Search initialValue() {
+            return new Search();
+        }
+    };
+
+    // an immutable shortest ancestral path, as length and ancestor found by the same search
+    public static final class AncestralPath {
+        private final int length, ancestor;
+
+        private AncestralPath(int length, int ancestor) {
+            this.length = length;
+            this.ancestor = ancestor;
+        }
+
+        // length of the path, -1 if no such path
+        public int length() {
+            return length;
+        }
+
+        // common ancestor on the path, -1 if no such path
+        public int ancestor() {
+            return ancestor;
+        }
+
+        public String toString() {
+            return "length = " + length + ", ancestor = " + ancestor;
+        }
+    }
+
+    // every ancestor of a vertex set (the set itself included) with its
+    // distance from the set, sorted by vertex so two of them can be merged
+    public static final class Ancestors {
+        private final int[] vertices;
+        private final int[] distTo;
+
+        private Ancestors(int[] vertices, int[] distTo) {
+            this.vertices = vertices;
+            this.distTo = distTo;
+        }
+
+        // number of ancestors
+        public int size() {
+            return vertices.length;
+        }
+    }
+
+    // one side of the search; x has been reached from this side of the
+    // current search iff marked[x] == version, so nothing is reset between
+    // searches, and every vertex enters queue at most once per search
+    private static class Frontier {
+        private int[] marked;
+        private int[] distTo;
+        private int[] queue;
+        private int head, tail;
+
+        Frontier(int V) {
+            marked = new int[V];
+            distTo = new int[V];
+            queue = new int[V];
+        }
+    }
+
+    // per-thread search state, the result of the last search is in length and ancestor
+    private class Search {
+        private Frontier vSide, wSide;
+        private int version;
+        private int length, ancestor;
+
+        Search() {
+            vSide = new Frontier(V);
+            wSide = new Frontier(V);
+            version = 0;
+        }
+
+        void sap(int v, int w) {
+            newSearch();
+            if (lca != null && lca.covers(v) && lca.covers(w)) {
+                treePath(v, w);
+            }
+            else {
+                reach(v, 0, vSide, wSide);
+                reach(w, 0, wSide, vSide);
+                search();
+            }
+            done();
+        }
+
+        void sap(Iterable<Integer> v, Iterable<Integer> w) {
+            newSearch();
+            if (treeSize(v) * treeSize(w) <= MAX_TREE_PAIRS) {
+                for (int i : v) {
+                    for (int j : w) {
+                        treePath(i, j);
+                    }
+                }
+            }
+            else {
+                for (int i : v) {
+                    reach(i, 0, vSide, wSide);
+                }
+                for (int i : w) {
+                    reach(i, 0, wSide, vSide);
+                }
+                search();
+            }
+            done();
+        }
+
+        void sap(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+            newSearch();
+            if (treeSize(v, vFrom, vTo) * treeSize(w, wFrom, wTo) <= MAX_TREE_PAIRS) {
+                for (int i = vFrom; i < vTo; ++i) {
+                    for (int j = wFrom; j < wTo; ++j) {
+                        treePath(v[i], w[j]);
+                    }
+                }
+            }
+            else {
+                for (int i = vFrom; i < vTo; ++i) {
+                    reach(v[i], 0, vSide, wSide);
+                }
+                for (int i = wFrom; i < wTo; ++i) {
+                    reach(w[i], 0, wSide, vSide);
+                }
+                search();
+            }
+            done();
+        }
+
+        // size of the set if all of its vertices are tree vertices, MAX_TREE_PAIRS + 1 otherwise
+        private int treeSize(Iterable<Integer> v) {
+            int n = 0;
+            for (int i : v) {
+                if (lca == null || !lca.covers(i) || ++n > MAX_TREE_PAIRS) {
+                    return MAX_TREE_PAIRS + 1;
+                }
+            }
+            return n;
+        }
+
+        private int treeSize(int[] v, int from, int to) {
+            if (lca == null || to - from > MAX_TREE_PAIRS) {
+                return MAX_TREE_PAIRS + 1;
+            }
+            for (int i = from; i < to; ++i) {
+                if (!lca.covers(v[i])) {
+                    return MAX_TREE_PAIRS + 1;
+                }
+            }
+            return to - from;
+        }
+
+        // the path between tree vertices v and w through their lowest common ancestor, if shorter
+        private void treePath(int v, int w) {
+            int a = lca.lca(v, w);
+            if (a != -1) {
+                int dist = lca.depth(v) + lca.depth(w) - 2 * lca.depth(a);
+                if (dist < length) {
+                    length = dist;
+                    ancestor = a;
+                }
+            }
+        }
+
+        private void done() {
+            if (ancestor == -1) {
+                length = -1;
+            }
+        }
+
+        // complete BFS from v on the v side alone
+        Ancestors ancestors(Iterable<Integer> v) {
+            newSearch();
+            for (int i : v) {
+                reach(i, 0, vSide, wSide);
+            }
+            return collect();
+        }
+
+        Ancestors ancestors(int[] v, int from, int to) {
+            newSearch();
+            for (int i = from; i < to; ++i) {
+                reach(v[i], 0, vSide, wSide);
+            }
+            return collect();
+        }
+
+        private Ancestors collect() {
+            while (vSide.head < vSide.tail) {
+                expand(vSide, wSide);
+            }
+
+            // sort the reached vertices by packing each one above its distance
+            int n = vSide.tail;
+            long[] packed = new long[n];
+            for (int i = 0; i < n; ++i) {
+                int x = vSide.queue[i];
+                packed[i] = ((long) x << 32) | vSide.distTo[x];
+            }
+            Arrays.sort(packed);
+            int[] vertices = new int[n];
+            int[] distTo = new int[n];
+            for (int i = 0; i < n; ++i) {
+                vertices[i] = (int) (packed[i] >>> 32);
+                distTo[i] = (int) packed[i];
+            }
+            return new Ancestors(vertices, distTo);
+        }
+
+        private void newSearch() {
+            ++version;
+            if (version == 0) {
+                // the counter wrapped around, so old marks could be mistaken for new ones
+                Arrays.fill(vSide.marked, 0);
+                Arrays.fill(wSide.marked, 0);
+                version = 1;
+            }
+            vSide.head = vSide.tail = 0;
+            wSide.head = wSide.tail = 0;
+            length = Integer.MAX_VALUE;
+            ancestor = -1;
+        }
+
+        // advance the v side and the w side one BFS level at a time, always the
+        // shallower one first, and stop a side as soon as the vertices it would
+        // discover next cannot be part of an ancestral path shorter than the best one
+        private void search() {
+            int vLevel = 0, wLevel = 0;
+            while (true) {
+                boolean vActive = vSide.head < vSide.tail && vLevel + 1 < length;
+                boolean wActive = wSide.head < wSide.tail && wLevel + 1 < length;
+                if (vActive && (!wActive || vLevel <= wLevel)) {
+                    expand(vSide, wSide);
+                    ++vLevel;
+                }
+                else if (wActive) {
+                    expand(wSide, vSide);
+                    ++wLevel;
+                }
+                else {
+                    break;
+                }
+            }
+        }
+
+        // visit every vertex of the current level of one side
+        private void expand(Frontier side, Frontier other) {
+            for (int end = side.tail; side.head < end; ++side.head) {
+                int x = side.queue[side.head];
+                for (int i = offsets[x], last = offsets[x + 1]; i < last; ++i) {
+                    reach(targets[i], side.distTo[x] + 1, side, other);
+                }
+            }
+        }
+
+        private void reach(int x, int dist, Frontier side, Frontier other) {
+            if (side.marked[x] == version) {
+                return;
+            }
+            side.marked[x] = version;
+            side.distTo[x] = dist;
+            side.queue[side.tail++] = x;
+            if (other.marked[x] == version && dist + other.distTo[x] < length) {
+                length = dist + other.distTo[x];
+                ancestor = x;
+            }
+        }
+    }
 
     // constructor takes a digraph (note necessarily a DAG)
     public SAP(Digraph G) {
-        this.G = new Digraph(G);
-        length = -1;
-        ancestor = -1;
+        this(new CSRDigraph(G), 0);
+    }
+
+    // remembers up to cacheSize recently queried paths, no cache if cacheSize is 0
+    public SAP(Digraph G, int cacheSize) {
+        this(new CSRDigraph(G), cacheSize);
+    }
+
+    // shares G, which is immutable, instead of copying it
+    public SAP(CSRDigraph G) {
+        this(G, 0);
+    }
+
+    public SAP(CSRDigraph G, int cacheSize) {
+        this(G, cacheSize, new LCAIndex(G));
+    }
+
+    // takes the LCA index of G, built before, instead of building it
+    SAP(CSRDigraph G, int cacheSize, LCAIndex index) {
+        if (cacheSize < 0) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        cache = cacheSize == 0 ? null : new SAPCache(cacheSize);
+        V = G.V();
+        offsets = G.offsets();
+        targets = G.targets();
+        lca = index.size() > 0 ? index : null;
+    }
+
+    // the LCA index, for saving it; null if the digraph has no tree vertices
+    LCAIndex lcaIndex() {
+        return lca;
     }
 
     // length of shortest ancestral path between v and w
     // -1 if no such path
     public int length(int v, int w) {
-        if (!idxValid(v) || !idxValid(w)) {
-            throw new java.lang.IndexOutOfBoundsException();
+        if (cache != null) {
+            return path(v, w).length();
         }
-        sap(v,  w);
-        return length;
+        return search(v, w).length;
     }
 
     // a common ancestor of v and w that participates in a shortest ancestral path
     // -1 if no such path
     public int ancestor(int v, int w) {
-        if (!idxValid(v) || !idxValid(w)) {
-            throw new java.lang.IndexOutOfBoundsException();
+        if (cache != null) {
+            return path(v, w).ancestor();
         }
-        sap(v, w);
-        return ancestor;
+        return search(v, w).ancestor;
     }
 
     // length of shortest ancestral path between any vertex in v and any vertex in w
     // -1 if no such path
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
-        if (!idxValid(v) || !idxValid(w)) {
-            throw new java.lang.IndexOutOfBoundsException();
+        if (cache != null) {
+            return path(v, w).length();
         }
-        sap(v, w);
-        return length;
+        return search(v, w).length;
     }
 
     // a common ancestor that participates in shortest ancestral path
     // -1 if no such path
     public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        if (cache != null) {
+            return path(v, w).ancestor();
+        }
+        return search(v, w).ancestor;
+    }
+
+    // length and ancestor of a shortest ancestral path between v and w, from a single search
+    public AncestralPath path(int v, int w) {
+        if (cache == null) {
+            Search search = search(v, w);
+            return new AncestralPath(search.length, search.ancestor);
+        }
+        SAPCache.Key key = new SAPCache.Key(v, w);
+        AncestralPath path = cache.get(key);
+        if (path == null) {
+            Search search = search(v, w);
+            path = new AncestralPath(search.length, search.ancestor);
+            cache.put(key, path);
+        }
+        return path;
+    }
+
+    // length and ancestor of a shortest ancestral path between any vertex in v
+    // and any vertex in w, from a single search
+    public AncestralPath path(Iterable<Integer> v, Iterable<Integer> w) {
+        if (cache == null) {
+            Search search = search(v, w);
+            return new AncestralPath(search.length, search.ancestor);
+        }
         if (!idxValid(v) || !idxValid(w)) {
             throw new java.lang.IndexOutOfBoundsException();
         }
-        sap(v, w);
-        return ancestor;
+        SAPCache.Key key = new SAPCache.Key(v, w);
+        AncestralPath path = cache.get(key);
+        if (path == null) {
+            Search search = search(v, w);
+            path = new AncestralPath(search.length, search.ancestor);
+            cache.put(key, path);
+        }
+        return path;
     }
 
-    private boolean idxValid(int idx) {
-        return idx >= 0 && idx < G.V();
+    // shortest ancestral path between any vertex in v[vFrom, vTo) and any vertex in w[wFrom, wTo),
+    // for callers that keep their vertex sets in ranges of flat arrays
+    public AncestralPath path(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        if (!idxValid(v, vFrom, vTo) || !idxValid(w, wFrom, wTo)) {
+            throw new java.lang.IndexOutOfBoundsException();
+        }
+        SAPCache.Key key = null;
+        if (cache != null) {
+            key = new SAPCache.Key(v, vFrom, vTo, w, wFrom, wTo);
+            AncestralPath path = cache.get(key);
+            if (path != null) {
+                return path;
+            }
+        }
+        Search search = scratch();
+        search.sap(v, vFrom, vTo, w, wFrom, wTo);
+        AncestralPath path = new AncestralPath(search.length, search.ancestor);
+        if (cache != null) {
+            cache.put(key, path);
+        }
+        return path;
     }
 
-    private boolean idxValid(Iterable<Integer> idx) {
-        for (int i : idx) {
-            if (i < 0 || i >= G.V()) {
-                return false;
-            }
+    // the ancestors of the vertices in v, from one complete BFS
+    public Ancestors ancestors(Iterable<Integer> v) {
+        if (!idxValid(v)) {
+            throw new java.lang.IndexOutOfBoundsException();
         }
-        return true;
+        return scratch().ancestors(v);
+    }
+
+    // the ancestors of the vertices in v[from, to), from one complete BFS
+    public Ancestors ancestors(int[] v, int from, int to) {
+        if (!idxValid(v, from, to)) {
+            throw new java.lang.IndexOutOfBoundsException();
+        }
+        return scratch().ancestors(v, from, to);
     }
 
-    private void sap(int v, int w) {
-        BreadthFirstDirectedPaths vBFS = new BreadthFirstDirectedPaths(G, v);
-        BreadthFirstDirectedPaths wBFS = new BreadthFirstDirectedPaths(G, w);
-        int minLength = Integer.MAX_VALUE;
-        int vwAncestor = -1;
-        for (int i = 0; i < G.V(); ++i) {
-            if (vBFS.hasPathTo(i) && wBFS.hasPathTo(i)) {
-                int vwLength = vBFS.distTo(i) + wBFS.distTo(i);
-                if (minLength > vwLength) {
-                    minLength = vwLength;
-                    vwAncestor = i;
+    // shortest ancestral path between the vertex sets whose ancestors are v and w
+    public static AncestralPath path(Ancestors v, Ancestors w) {
+        long meet = meet(v, w);
+        return new AncestralPath((int) (meet >> 32), (int) meet);
+    }
+
+    // length of shortest ancestral path between every pair of the given vertex sets,
+    // running one BFS per set; -1 where there is no such path
+    public int[][] lengths(List<? extends Iterable<Integer>> sets) {
+        Ancestors[] ancestors = new Ancestors[sets.size()];
+        for (int i = 0; i < ancestors.length; ++i) {
+            ancestors[i] = ancestors(sets.get(i));
+        }
+        int[][] lengths = new int[ancestors.length][ancestors.length];
+        for (int i = 0; i < ancestors.length; ++i) {
+            fillRow(ancestors, lengths, i);
+        }
+        return lengths;
+    }
+
+    // same as lengths(sets), with the BFS and the rows of the matrix spread over pool
+    public int[][] lengths(List<? extends Iterable<Integer>> sets, ForkJoinPool pool) {
+        Ancestors[] ancestors = new Ancestors[sets.size()];
+        int[][] lengths = new int[ancestors.length][ancestors.length];
+        pool.invoke(new AncestorsTask(sets, ancestors, 0, ancestors.length));
+        pool.invoke(new LengthsTask(ancestors, lengths, 0, ancestors.length));
+        return lengths;
+    }
+
+    // fills row i of the upper triangle of lengths and its mirror image
+    private static void fillRow(Ancestors[] ancestors, int[][] lengths, int i) {
+        for (int j = i; j < ancestors.length; ++j) {
+            lengths[i][j] = (int) (meet(ancestors[i], ancestors[j]) >> 32);
+            lengths[j][i] = lengths[i][j];
+        }
+    }
+
+    // merge join of two ancestor lists on their common vertices, returning the
+    // length of the shortest path in the high and its ancestor in the low 32 bits
+    private static long meet(Ancestors v, Ancestors w) {
+        int length = -1, ancestor = -1;
+        int i = 0, j = 0;
+        while (i < v.vertices.length && j < w.vertices.length) {
+            if (v.vertices[i] < w.vertices[j]) {
+                ++i;
+            }
+            else if (v.vertices[i] > w.vertices[j]) {
+                ++j;
+            }
+            else {
+                int dist = v.distTo[i] + w.distTo[j];
+                if (length == -1 || dist < length) {
+                    length = dist;
+                    ancestor = v.vertices[i];
                 }
+                ++i;
+                ++j;
             }
         }
+        return ((long) length << 32) | (ancestor & 0xffffffffL);
+    }
+
+    // computes ancestors[lo, hi) from sets[lo, hi)
+    private class AncestorsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<? extends Iterable<Integer>> sets;
+        private final Ancestors[] ancestors;
+        private final int lo, hi;
 
-        ancestor = vwAncestor;
-        if (ancestor == -1) {
-            length = -1;
+        AncestorsTask(List<? extends Iterable<Integer>> sets, Ancestors[] ancestors, int lo, int hi) {
+            this.sets = sets;
+            this.ancestors = ancestors;
+            this.lo = lo;
+            this.hi = hi;
         }
-        else {
-            length = minLength;
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= ROWS_PER_TASK) {
+                for (int i = lo; i < hi; ++i) {
+                    ancestors[i] = ancestors(sets.get(i));
+                }
+            }
+            else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new AncestorsTask(sets, ancestors, lo, mid),
+                          new AncestorsTask(sets, ancestors, mid, hi));
+            }
         }
     }
 
-    private void sap(Iterable<Integer> v, Iterable<Integer> w) {
-        BreadthFirstDirectedPaths vBFS = new BreadthFirstDirectedPaths(G, v);
-        BreadthFirstDirectedPaths wBFS = new BreadthFirstDirectedPaths(G, w);
-        int minLength = Integer.MAX_VALUE;
-        int vwAncestor = -1;
-        for (int i = 0; i < G.V(); ++i) {
-            if (vBFS.hasPathTo(i) && wBFS.hasPathTo(i)) {
-                int vwLength = vBFS.distTo(i) + wBFS.distTo(i);
-                if (minLength > vwLength) {
-                    minLength = vwLength;
-                    vwAncestor = i;
+    // fills rows [lo, hi) of lengths
+    private static class LengthsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Ancestors[] ancestors;
+        private final int[][] lengths;
+        private final int lo, hi;
+
+        LengthsTask(Ancestors[] ancestors, int[][] lengths, int lo, int hi) {
+            this.ancestors = ancestors;
+            this.lengths = lengths;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= ROWS_PER_TASK) {
+                for (int i = lo; i < hi; ++i) {
+                    fillRow(ancestors, lengths, i);
                 }
             }
+            else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new LengthsTask(ancestors, lengths, lo, mid),
+                          new LengthsTask(ancestors, lengths, mid, hi));
+            }
+        }
+    }
+
+    // number of queries answered from the cache, 0 if there is no cache
+    public long cacheHits() {
+        return cache == null ? 0 : cache.hits();
+    }
+
+    // number of queries that had to search, 0 if there is no cache
+    public long cacheMisses() {
+        return cache == null ? 0 : cache.misses();
+    }
+
+    private Search search(int v, int w) {
+        if (!idxValid(v) || !idxValid(w)) {
+            throw new java.lang.IndexOutOfBoundsException();
+        }
+        Search search = scratch();
+        search.sap(v, w);
+        return search;
+    }
+
+    private Search search(Iterable<Integer> v, Iterable<Integer> w) {
+        if (!idxValid(v) || !idxValid(w)) {
+            throw new java.lang.IndexOutOfBoundsException();
+        }
+        Search search = scratch();
+        search.sap(v, w);
+        return search;
+    }
+
+    // switches to G, the digraph after vertices and edges were added to it, where
+    // changed holds every old vertex whose ancestors are no longer the same;
+    // paths cached for other vertex sets stay, and so does the LCA index for
+    // other tree vertices; not thread-safe, so callers must hold off queries meanwhile
+    void update(CSRDigraph G, java.util.BitSet changed) {
+        if (G.V() < V) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        V = G.V();
+        offsets = G.offsets();
+        targets = G.targets();
+        if (lca != null) {
+            for (int v = changed.nextSetBit(0); v >= 0; v = changed.nextSetBit(v + 1)) {
+                lca.exclude(v);
+            }
         }
+        if (cache != null) {
+            cache.invalidate(changed);
+        }
+    }
+
+    // this thread's scratch space, grown if vertices were added since it was made
+    private Search scratch() {
+        Search search = searches.get();
+        if (search.vSide.marked.length < V) {
+            search = new Search();
+            searches.set(search);
+        }
+        return search;
+    }
+
+    private boolean idxValid(int idx) {
+        return idx >= 0 && idx < V;
+    }
 
-        ancestor = vwAncestor;
-        if (ancestor == -1) {
-            length = -1;
+    private boolean idxValid(int[] idx, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (idx[i] < 0 || idx[i] >= V) {
+                return false;
+            }
         }
-        else {
-            length = minLength;
+        return true;
+    }
+
+    private boolean idxValid(Iterable<Integer> idx) {
+        for (int i : idx) {
+            if (i < 0 || i >= V) {
+                return false;
+            }
         }
+        return true;
     }
 
     // for unit testing of this class
@@ -118,9 +643,7 @@ public class SAP {
         while (!StdIn.isEmpty()) {
             int v = StdIn.readInt();
             int w = StdIn.readInt();
-            int length = sap.length(v, w);
-            int ancestor = sap.ancestor(v, w);
-            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+            StdOut.println(sap.path(v, w));
         }
     }
-}
\ No newline at end of file
+}
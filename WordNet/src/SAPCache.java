@@ -0,0 +1,212 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a bounded, thread-safe LRU cache of shortest ancestral paths keyed on the
+// pair of vertex sets; the key is symmetric, so (v, w) and (w, v) share an entry
+public class SAPCache {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final AtomicLong hits, misses;
+
+    // the key of a query; both vertex sets are sorted and without duplicates,
+    // and the smaller set in lexicographic order always comes first
+    public static final class Key {
+        private final int[] a, b;
+        private final int hash;
+
+        public Key(int v, int w) {
+            this(new int[] { v }, new int[] { w });
+        }
+
+        public Key(Iterable<Integer> v, Iterable<Integer> w) {
+            this(toSortedSet(v), toSortedSet(w));
+        }
+
+        public Key(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+            this(toSortedSet(Arrays.copyOfRange(v, vFrom, vTo), vTo - vFrom),
+                 toSortedSet(Arrays.copyOfRange(w, wFrom, wTo), wTo - wFrom));
+        }
+
+        private Key(int[] v, int[] w) {
+            if (compare(v, w) <= 0) {
+                a = v;
+                b = w;
+            }
+            else {
+                a = w;
+                b = v;
+            }
+            hash = 31 * Arrays.hashCode(a) + Arrays.hashCode(b);
+        }
+
+        // does either vertex set contain a vertex of vertices?
+        boolean touches(java.util.BitSet vertices) {
+            for (int v : a) {
+                if (vertices.get(v)) {
+                    return true;
+                }
+            }
+            for (int v : b) {
+                if (vertices.get(v)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int[] toSortedSet(Iterable<Integer> v) {
+            int n = 0;
+            int[] set = new int[4];
+            for (int i : v) {
+                if (n == set.length) {
+                    set = Arrays.copyOf(set, 2 * n);
+                }
+                set[n++] = i;
+            }
+            return toSortedSet(set, n);
+        }
+
+        // sorts set[0, n) in place and returns its distinct values
+        private static int[] toSortedSet(int[] set, int n) {
+            Arrays.sort(set, 0, n);
+            int m = 0;
+            for (int i = 0; i < n; ++i) {
+                if (m == 0 || set[m - 1] != set[i]) {
+                    set[m++] = set[i];
+                }
+            }
+            return m == set.length ? set : Arrays.copyOf(set, m);
+        }
+
+        private static int compare(int[] v, int[] w) {
+            for (int i = 0; i < v.length && i < w.length; ++i) {
+                if (v[i] != w[i]) {
+                    return v[i] < w[i] ? -1 : 1;
+                }
+            }
+            return v.length - w.length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return hash == that.hash && Arrays.equals(a, that.a) && Arrays.equals(b, that.b);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // an access-ordered map that drops its least recently used entry when full
+    private static class Segment extends LinkedHashMap<Key, SAP.AncestralPath> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, SAP.AncestralPath> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    // cache holding at most capacity paths
+    public SAPCache(int capacity) {
+        if (capacity <= 0) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        int n = 1;
+        while (n < MAX_SEGMENTS && 2 * n <= capacity) {
+            n *= 2;
+        }
+        segments = new Segment[n];
+        for (int i = 0; i < n; ++i) {
+            // spread the capacity so that the segments add up to it exactly
+            segments[i] = new Segment(capacity / n + (i < capacity % n ? 1 : 0));
+        }
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    // the cached path for key, null if there is none
+    public SAP.AncestralPath get(Key key) {
+        Segment segment = segmentFor(key);
+        SAP.AncestralPath path;
+        synchronized (segment) {
+            path = segment.get(key);
+        }
+        if (path == null) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return path;
+    }
+
+    public void put(Key key, SAP.AncestralPath path) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, path);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    // drops the paths between vertex sets that contain a vertex of vertices,
+    // whose ancestors have changed, and keeps all the others
+    public void invalidate(java.util.BitSet vertices) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                java.util.Iterator<Key> keys = segment.keySet().iterator();
+                while (keys.hasNext()) {
+                    if (keys.next().touches(vertices)) {
+                        keys.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    // number of cached paths
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+}
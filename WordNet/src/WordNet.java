@@ -1,92 +1,764 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// queries may run concurrently from many threads; addSynset(), addNoun() and
+// addHypernym() edit the WordNet in place, one at a time, while queries wait
 public class WordNet {
-    private SeparateChainingHashST<String, Bag<Integer>> hash;
-    private SeparateChainingHashST<Integer, String> synset;
-    private Digraph G;
-    private Queue<String> nouns; 
+    // number of recently queried noun pairs whose paths are remembered by default
+    private static final int CACHE_SIZE = 1 << 16;
+    // first int of a snapshot file, "WNS" followed by the format version
+    private static final int SNAPSHOT_MAGIC = 0x574e5302;
+    // loads the files of WordNets built without a pool of their own; its
+    // worker threads are daemons, started on first use and kept for later loads
+    private static final ForkJoinPool LOAD_POOL = new ForkJoinPool();
+
+    private NounIndex index;
+    private String[] synset;
+    private CSRDigraph G;
+    // the hyponym edges, that is G reversed
+    private CSRDigraph reverse;
+    private HyponymIndex hyponyms;
+    // keeps edits from closing a cycle without searching the whole digraph
+    private OnlineTopologicalOrder order;
     private SAP sap;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ThreadLocal<NearestSearch> nearestSearches = new ThreadLocal<NearestSearch>() {
+        @Override
+        protected NearestSearch initialValue() {
+            return new NearestSearch();
+        }
+    };
+
+    // per-thread state of nearest(); a synset is reached going up through hypernyms
+    // if upMarked[x] == version, and reached by going down through hyponyms,
+    // possibly after going up, if downMarked[x] == version; queue holds the
+    // states of the BFS, 2 * x for x going up and 2 * x + 1 for x going down
+    private class NearestSearch {
+        private int[] upMarked = new int[G.V()];
+        private int[] downMarked = new int[G.V()];
+        private int[] queue = new int[2 * G.V()];
+        private int[] nounMarked = new int[index.size()];
+        private int version = 0;
+        private int k;
+
+        List<String> nearest(int noun, int k) {
+            this.k = k;
+            ++version;
+            if (version == 0) {
+                // the counter wrapped around, so old marks could be mistaken for new ones
+                Arrays.fill(upMarked, 0);
+                Arrays.fill(downMarked, 0);
+                Arrays.fill(nounMarked, 0);
+                version = 1;
+            }
+            List<String> nearest = new ArrayList<String>(k);
+            nounMarked[noun] = version;
+            int[] offsets = index.offsets();
+            int[] ids = index.ids();
+            int head = 0, tail = 0;
+            for (int i = offsets[noun]; i < offsets[noun + 1]; ++i) {
+                tail = reachUp(ids[i], tail, nearest);
+            }
+
+            // a BFS over the states, so the synsets are reached going down in order of distance
+            int[] up = G.offsets(), upTargets = G.targets();
+            int[] down = reverse.offsets(), downTargets = reverse.targets();
+            while (head < tail && nearest.size() < k) {
+                int x = queue[head] >> 1;
+                if ((queue[head] & 1) == 0) {
+                    for (int i = up[x]; i < up[x + 1]; ++i) {
+                        tail = reachUp(upTargets[i], tail, nearest);
+                    }
+                }
+                for (int i = down[x]; i < down[x + 1]; ++i) {
+                    tail = reachDown(downTargets[i], tail, nearest);
+                }
+                ++head;
+            }
+            return nearest;
+        }
+
+        // going up to x also means having gone down to x, at the same distance
+        private int reachUp(int x, int tail, List<String> nearest) {
+            if (upMarked[x] == version) {
+                return tail;
+            }
+            upMarked[x] = version;
+            queue[tail++] = 2 * x;
+            if (downMarked[x] != version) {
+                downMarked[x] = version;
+                settle(x, nearest);
+            }
+            return tail;
+        }
+
+        private int reachDown(int x, int tail, List<String> nearest) {
+            if (downMarked[x] == version) {
+                return tail;
+            }
+            downMarked[x] = version;
+            queue[tail++] = 2 * x + 1;
+            settle(x, nearest);
+            return tail;
+        }
+
+        // the nouns of synset x not seen before are the next nearest ones
+        private void settle(int x, List<String> nearest) {
+            int[] synsetOffsets = index.synsetOffsets();
+            int[] synsetNouns = index.synsetNouns();
+            for (int i = synsetOffsets[x]; i < synsetOffsets[x + 1]; ++i) {
+                int n = synsetNouns[i];
+                if (nounMarked[n] != version && nearest.size() < k) {
+                    nounMarked[n] = version;
+                    nearest.add(index.noun(n));
+                }
+            }
+        }
+    }
 
     // constructor takes the name of the two input files
     public WordNet(String synsets, String hypernyms) {
-        hash = new SeparateChainingHashST<String, Bag<Integer>>();
-        synset = new SeparateChainingHashST<Integer, String>();
-        nouns = new Queue<String>(); 
-        In in = new In(synsets);
-        int numID = 0;
-        for (String line = in.readLine(); line != null; line = in.readLine()) {
-           String[] fields = line.split("\\,");
-           synset.put(Integer.valueOf(fields[0]), fields[1]);
-           String[] words = fields[1].split(" ");
-           for (int i = 0; i < words.length; ++i) {
-               if (hash.contains(words[i])) {
-                   hash.get(words[i]).add(Integer.valueOf(fields[0]));
-               }
-               else {
-                   Bag<Integer> bag = new Bag<Integer>();
-                   bag.add(Integer.valueOf(fields[0]));
-                   hash.put(words[i], bag);
-                   nouns.enqueue(words[i]);
-               }
-           }
-           ++numID;
-        }
-
-        G = new Digraph(numID);
-        in = new In(hypernyms);
-        for (String line = in.readLine(); line != null; line = in.readLine()) {
-            String[] fields = line.split("\\,");
-            for (int i = 1; i < fields.length; ++i) {
-                G.addEdge(Integer.valueOf(fields[0]), Integer.valueOf(fields[i]));
-            }
-        }
-
-        int numRoot = 0;
-        // check whether the input is a rooted DAG
-        for (int i = 0; i < G.V(); ++i) {
-            if (((Bag<Integer>) (G.adj(i))).isEmpty()) {
-                ++numRoot;
-                if (numRoot > 1) {
-                    throw new java.lang.IllegalArgumentException();
-                }
-            }
-        }
-        DirectedCycle cycle = new DirectedCycle(G);
-        if (cycle.hasCycle()) {
-            throw new java.lang.IllegalArgumentException();
+        this(synsets, hypernyms, CACHE_SIZE);
+    }
+
+    // remembers the paths of up to cacheSize recently queried noun pairs, none if cacheSize is 0
+    public WordNet(String synsets, String hypernyms, int cacheSize) {
+        this(synsets, hypernyms, cacheSize, LOAD_POOL);
+    }
+
+    // parses and validates the two input files in parallel on pool
+    public WordNet(String synsets, String hypernyms, int cacheSize, ForkJoinPool pool) {
+        WordNetLoader loader = new WordNetLoader(synsets, hypernyms, pool);
+        init(loader.index(), loader.synsets(), loader.digraph(), cacheSize);
+    }
+
+    // takes the already checked contents of a snapshot
+    private WordNet(NounIndex index, String[] synset, CSRDigraph G, CSRDigraph reverse,
+                    HyponymIndex hyponyms, OnlineTopologicalOrder order, SAP sap) {
+        this.index = index;
+        this.synset = synset;
+        this.G = G;
+        this.reverse = reverse;
+        this.hyponyms = hyponyms;
+        this.order = order;
+        this.sap = sap;
+    }
+
+    private void init(NounIndex index, String[] synset, CSRDigraph G, int cacheSize) {
+        this.index = index;
+        this.synset = synset;
+        this.G = G;
+        reverse = G.reverse();
+        hyponyms = new HyponymIndex(G, reverse);
+        order = new OnlineTopologicalOrder(G);
+        sap = new SAP(G, cacheSize);
+    }
+
+    // adds a synset made of the nouns in synset, separated by spaces as in the
+    // synsets file, below the given hypernyms, and returns its id; it needs at
+    // least one hypernym, since the WordNet keeps a single root
+    public int addSynset(String synset, int... hypernyms) {
+        String[] words = synset.split(" ");
+        for (String word : words) {
+            if (word.isEmpty()) {
+                throw new java.lang.IllegalArgumentException("empty noun in \"" + synset + "\"");
+            }
         }
+        if (hypernyms.length == 0) {
+            throw new java.lang.IllegalArgumentException("a new synset needs a hypernym");
+        }
+        lock.writeLock().lock();
+        try {
+            int id = G.V();
+            int[] from = new int[hypernyms.length];
+            for (int i = 0; i < hypernyms.length; ++i) {
+                checkSynset(hypernyms[i]);
+                from[i] = id;
+            }
+            // a new vertex without hyponyms cannot close a cycle, and changes no ancestors
+            order.addVertex();
+            int n = hypernyms.length;
+            update(G.withEdges(id + 1, from, hypernyms, n), reverse.withEdges(id + 1, hypernyms, from, n));
+            sap.update(G, new BitSet());
+            this.synset = Arrays.copyOf(this.synset, id + 1);
+            this.synset[id] = synset;
+            index = index.with(words, id);
+            return id;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        sap = new SAP(G);
+    // adds noun to the synset with the given id, if it is not there yet
+    public void addNoun(String noun, int id) {
+        if (noun.isEmpty() || noun.indexOf(' ') != -1) {
+            throw new java.lang.IllegalArgumentException("not a noun: \"" + noun + "\"");
+        }
+        lock.writeLock().lock();
+        try {
+            checkSynset(id);
+            NounIndex updated = index.with(new String[] { noun }, id);
+            if (updated != index) {
+                index = updated;
+                synset[id] = synset[id] + " " + noun;
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // adds the hypernym edge from synset id to synset hypernym, if it is not there yet;
+    // an edge that would close a cycle is refused with an IllegalArgumentException
+    public void addHypernym(int id, int hypernym) {
+        lock.writeLock().lock();
+        try {
+            checkSynset(id);
+            checkSynset(hypernym);
+            int[] offsets = G.offsets();
+            int[] targets = G.targets();
+            for (int i = offsets[id]; i < offsets[id + 1]; ++i) {
+                if (targets[i] == hypernym) {
+                    return;
+                }
+            }
+            if (!order.addEdge(id, hypernym, G, reverse)) {
+                throw new java.lang.IllegalArgumentException("hypernym " + hypernym + " of " + id + " closes a cycle");
+            }
+            int[] from = { id };
+            int[] to = { hypernym };
+            int V = G.V();
+            update(G.withEdges(V, from, to, 1), reverse.withEdges(V, to, from, 1));
+            // id has one more way up, and so do all of its hyponyms
+            BitSet changed = new BitSet(V);
+            for (int x : hyponyms.descendants(from, 0, 1)) {
+                changed.set(x);
+            }
+            sap.update(G, changed);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // switches to the edited digraph and rebuilds the hyponym index, in linear time;
+    // SAP is updated by the callers, as only they know whose ancestors changed
+    private void update(CSRDigraph G, CSRDigraph reverse) {
+        this.G = G;
+        this.reverse = reverse;
+        hyponyms = new HyponymIndex(G, reverse);
+    }
+
+    private void checkSynset(int id) {
+        if (id < 0 || id >= G.V()) {
+            throw new java.lang.IllegalArgumentException("no synset " + id);
+        }
+    }
+
+    // writes a binary snapshot of this WordNet that load() reads back by bulk copies alone, without
+    // parsing the text files or building any index; after the magic come the ints
+    //   V, E, nouns, pairs, table, synsetOffsets, lcaV, tour, lowest
+    // that is the numbers of synsets, hypernym edges, nouns and (noun, synset) pairs, the lengths
+    // of the NounIndex table and synsetOffsets, the number of vertices of the LCA index (-1 if
+    // there is none) and the length of its Euler tour, and the lowest topological position; then
+    // the arrays of ints
+    //   hypernyms offsets[V + 1], targets[E] and hyponyms offsets[V + 1], targets[E] in CSR form,
+    //   NounIndex table, offsets[nouns + 1], ids[pairs], synsetOffsets, synsetNouns[pairs],
+    //   HyponymIndex rank[V], treeLow[V], low[V], the topological positions[V],
+    //   LCAIndex roots[lcaV], depths[lcaV], firsts[lcaV] and every level of its sparse table,
+    //   the ends, counted in UTF-8 bytes, of the V synsets followed by the nouns,
+    // and last the UTF-8 bytes of those strings, one after the other
+    public void save(String snapshot) {
+        lock.readLock().lock();
+        try {
+            int V = G.V();
+            byte[][] strings = new byte[V + index.size()][];
+            for (int v = 0; v < V; ++v) {
+                strings[v] = synset[v].getBytes(StandardCharsets.UTF_8);
+            }
+            for (int n = 0; n < index.size(); ++n) {
+                strings[V + n] = index.noun(n).getBytes(StandardCharsets.UTF_8);
+            }
+            LCAIndex lca = sap.lcaIndex();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshot), 1 << 16));
+            try {
+                out.writeInt(SNAPSHOT_MAGIC);
+                writeInts(out, new int[] {
+                    V, G.E(), index.size(), index.ids().length, index.table().length, index.synsetOffsets().length,
+                    lca == null ? -1 : lca.roots().length, lca == null ? 0 : lca.sparse()[0].length, order.lowest()
+                });
+                for (CSRDigraph digraph : new CSRDigraph[] { G, reverse }) {
+                    writeInts(out, digraph.offsets());
+                    writeInts(out, digraph.targets());
+                }
+                writeInts(out, index.table());
+                writeInts(out, index.offsets());
+                writeInts(out, index.ids());
+                writeInts(out, index.synsetOffsets());
+                writeInts(out, index.synsetNouns());
+                writeInts(out, hyponyms.rank());
+                writeInts(out, hyponyms.treeLow());
+                writeInts(out, hyponyms.low());
+                writeInts(out, order.positions());
+                if (lca != null) {
+                    writeInts(out, lca.roots());
+                    writeInts(out, lca.depths());
+                    writeInts(out, lca.firsts());
+                    for (int[] level : lca.sparse()) {
+                        writeInts(out, level);
+                    }
+                }
+                int end = 0;
+                for (byte[] string : strings) {
+                    end += string.length;
+                    out.writeInt(end);
+                }
+                for (byte[] string : strings) {
+                    out.write(string);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            throw new java.lang.IllegalArgumentException("could not write " + snapshot, e);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // reads a snapshot written by save(), memory-mapping the file
+    public static WordNet load(String snapshot) {
+        return load(snapshot, CACHE_SIZE);
+    }
+
+    // reads a snapshot written by save(), remembering the paths of up to cacheSize noun pairs; every
+    // array is copied out in bulk and only checked, not rebuilt, so the time is that of reading the
+    // file and decoding the strings, and a truncated or corrupted file is an IllegalArgumentException
+    public static WordNet load(String snapshot, int cacheSize) {
+        ByteBuffer in;
+        try {
+            RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch (IOException e) {
+            throw new java.lang.IllegalArgumentException("could not read " + snapshot, e);
+        }
+        if (in.remaining() < 40 || in.getInt() != SNAPSHOT_MAGIC) {
+            throw new java.lang.IllegalArgumentException(snapshot + " is not a WordNet snapshot");
+        }
+
+        int V = in.getInt();
+        int E = in.getInt();
+        int numNoun = in.getInt();
+        int numPair = in.getInt();
+        int tableLength = in.getInt();
+        int synsetOffsetsLength = in.getInt();
+        int lcaV = in.getInt();
+        int tour = in.getInt();
+        int lowest = in.getInt();
+        if (V < 0 || E < 0 || numNoun < 0 || numPair < 0 || tableLength <= numNoun || Integer.bitCount(tableLength) != 1
+            || synsetOffsetsLength < 1 || synsetOffsetsLength > V + 1 || lcaV < -1 || lcaV > V || tour < 0
+            || (lcaV == -1) != (tour == 0)) {
+            throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+        }
+        long ints = 2 * (V + 1L + E) + tableLength + numNoun + 1L + 2L * numPair + synsetOffsetsLength + 5L * V + numNoun;
+        int levels = 0;
+        if (lcaV != -1) {
+            ints += 3L * lcaV;
+            while ((1L << levels) <= tour) {
+                ints += tour - (1 << levels) + 1;
+                ++levels;
+            }
+        }
+        if (in.remaining() < 4 * ints) {
+            throw new java.lang.IllegalArgumentException(snapshot + " is truncated");
+        }
+
+        // every array must keep the lookups into the others in bounds
+        CSRDigraph G = readCSR(in, V, E, V, snapshot);
+        CSRDigraph reverse = readCSR(in, V, E, V, snapshot);
+        int[] table = readInts(in, tableLength);
+        boolean empty = false;
+        for (int n : table) {
+            if (n < -1 || n >= numNoun) {
+                throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+            }
+            empty |= n == -1;
+        }
+        if (!empty) {
+            throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+        }
+        int[] offsets = readInts(in, numNoun + 1);
+        int[] ids = readInts(in, numPair);
+        checkCSR(offsets, ids, V, snapshot);
+        int[] synsetOffsets = readInts(in, synsetOffsetsLength);
+        int[] synsetNouns = readInts(in, numPair);
+        checkCSR(synsetOffsets, synsetNouns, numNoun, snapshot);
+        HyponymIndex hyponyms = new HyponymIndex(reverse, readInts(in, V), readInts(in, V), readInts(in, V));
+        OnlineTopologicalOrder order = new OnlineTopologicalOrder(readInts(in, V), lowest);
+        LCAIndex lca = new LCAIndex(new int[0], new int[0], new int[0], new int[][] { new int[0] });
+        if (lcaV != -1) {
+            int[] roots = readInts(in, lcaV);
+            int[] depths = readInts(in, lcaV);
+            int[] firsts = readInts(in, lcaV);
+            for (int v = 0; v < lcaV; ++v) {
+                if (roots[v] < -1 || roots[v] >= lcaV || roots[v] != -1 && (depths[v] < 0 || firsts[v] < 0 || firsts[v] >= tour)) {
+                    throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+                }
+            }
+            int[][] sparse = new int[levels][];
+            for (int k = 0; k < levels; ++k) {
+                sparse[k] = readInts(in, tour - (1 << k) + 1);
+                for (int x : sparse[k]) {
+                    if (x < 0 || x >= lcaV) {
+                        throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+                    }
+                }
+            }
+            lca = new LCAIndex(roots, depths, firsts, sparse);
+        }
+
+        int[] ends = readInts(in, V + numNoun);
+        for (int i = 0; i < ends.length; ++i) {
+            if (ends[i] < (i == 0 ? 0 : ends[i - 1])) {
+                throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+            }
+        }
+        if ((ends.length == 0 ? 0 : ends[ends.length - 1]) != in.remaining()) {
+            throw new java.lang.IllegalArgumentException(snapshot + " is truncated");
+        }
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        String[] synset = new String[V];
+        String[] nouns = new String[numNoun];
+        for (int i = 0; i < ends.length; ++i) {
+            int start = i == 0 ? 0 : ends[i - 1];
+            String string = new String(bytes, start, ends[i] - start, StandardCharsets.UTF_8);
+            if (i < V) {
+                synset[i] = string;
+            }
+            else {
+                nouns[i - V] = string;
+            }
+        }
+
+        NounIndex index = new NounIndex(nouns, table, offsets, ids, synsetOffsets, synsetNouns);
+        return new WordNet(index, synset, G, reverse, hyponyms, order, new SAP(G, cacheSize, lca));
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        for (int x : a) {
+            out.writeInt(x);
+        }
+    }
+
+    // the next n ints of a snapshot, which the caller has checked are there
+    private static int[] readInts(ByteBuffer in, int n) {
+        int[] a = new int[n];
+        in.asIntBuffer().get(a);
+        in.position(in.position() + 4 * n);
+        return a;
+    }
+
+    // the next V + 1 offsets and E targets of a snapshot as a digraph, checked as by checkCSR()
+    private static CSRDigraph readCSR(ByteBuffer in, int V, int E, int n, String snapshot) {
+        int[] offsets = readInts(in, V + 1);
+        int[] targets = readInts(in, E);
+        checkCSR(offsets, targets, n, snapshot);
+        return new CSRDigraph(offsets, targets);
+    }
+
+    // checks that offsets run from 0 to targets.length without decreasing, and every target is in [0, n)
+    private static void checkCSR(int[] offsets, int[] targets, int n, String snapshot) {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != targets.length) {
+            throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+        }
+        for (int i = 1; i < offsets.length; ++i) {
+            if (offsets[i - 1] > offsets[i]) {
+                throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+            }
+        }
+        for (int w : targets) {
+            if (w < 0 || w >= n) {
+                throw new java.lang.IllegalArgumentException(snapshot + " is corrupted");
+            }
+        }
     }
 
     // the set of nouns (no duplicates), returned as an Iterable
     public Iterable<String> nouns() {
-        return nouns;        
+        lock.readLock().lock();
+        try {
+            return index.nouns();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ids of the synsets of noun, in increasing order
+    public Iterable<Integer> synsets(String noun) {
+        lock.readLock().lock();
+        try {
+            return index.synsets(nounId(noun));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
     }
 
     // is the word a WordNet noun?
     public boolean isNoun(String word) {
-        return hash.contains(word);
+        lock.readLock().lock();
+        try {
+            return index.indexOf(word) != -1;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
     }
 
     // distance between nounA and nounB
     public int distance(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) {
+        lock.readLock().lock();
+        try {
+            return path(nounA, nounB).length();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // distance between every pair of the given nouns, from one BFS per noun
+    public int[][] distances(String[] nouns) {
+        lock.readLock().lock();
+        try {
+            return sap.lengths(synsetsOf(nouns));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // same as distances(nouns), computed in parallel on pool
+    public int[][] distances(String[] nouns, ForkJoinPool pool) {
+        lock.readLock().lock();
+        try {
+            return sap.lengths(synsetsOf(nouns), pool);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Iterable<Integer>> synsetsOf(String[] nouns) {
+        List<Iterable<Integer>> ids = new ArrayList<Iterable<Integer>>(nouns.length);
+        for (String noun : nouns) {
+            ids.add(index.synsets(nounId(noun)));
+        }
+        return ids;
+    }
+
+    private int nounId(String noun) {
+        int n = index.indexOf(noun);
+        if (n == -1) {
             throw new java.lang.IllegalArgumentException();
         }
-        return sap.length(hash.get(nounA), hash.get(nounB));
+        return n;
     }
 
-    // a synset that is the common ancestor of nounA and nounB in a shortest ancestral path
-    public String sap(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) {
+    // shortest ancestral path between the synsets of nounA and those of nounB
+    private SAP.AncestralPath path(String nounA, String nounB) {
+        int a = nounId(nounA);
+        int b = nounId(nounB);
+        int[] offsets = index.offsets();
+        int[] ids = index.ids();
+        return sap.path(ids, offsets[a], offsets[a + 1], ids, offsets[b], offsets[b + 1]);
+    }
+
+    // the k nouns nearest to noun, nearest first, from one traversal that goes up
+    // through the hypernyms of noun and down through the hyponyms of what it reaches
+    public Iterable<String> nearest(String noun, int k) {
+        if (k < 0) {
             throw new java.lang.IllegalArgumentException();
         }
+        lock.readLock().lock();
+        try {
+            NearestSearch search = nearestSearches.get();
+            if (search.upMarked.length < G.V() || search.nounMarked.length < index.size()) {
+                // synsets or nouns were added since this thread's scratch space was made
+                search = new NearestSearch();
+                nearestSearches.set(search);
+            }
+            return search.nearest(nounId(noun), k);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // all ancestors of the synsets of noun with their distances, from one BFS;
+    // SAP.path() combines two of them into the path between their nouns
+    public SAP.Ancestors ancestors(String noun) {
+        lock.readLock().lock();
+        try {
+            int n = nounId(noun);
+            int[] offsets = index.offsets();
+            return sap.ancestors(index.ids(), offsets[n], offsets[n + 1]);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // is nounA in a synset that is a hyponym of, or the same as, a synset of nounB?
+    public boolean isHyponym(String nounA, String nounB) {
+        lock.readLock().lock();
+        try {
+            int a = nounId(nounA);
+            int b = nounId(nounB);
+            int[] offsets = index.offsets();
+            int[] ids = index.ids();
+            for (int i = offsets[a]; i < offsets[a + 1]; ++i) {
+                for (int j = offsets[b]; j < offsets[b + 1]; ++j) {
+                    if (hyponyms.isDescendant(ids[i], ids[j])) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the nouns of the synsets of noun and of all their hyponyms, noun itself
+    // excluded, enumerated lazily while walking down the hyponym edges; every
+    // iteration sees the WordNet as it was when the iteration started
+    public Iterable<String> hyponyms(String noun) {
+        final int n;
+        lock.readLock().lock();
+        try {
+            n = nounId(noun);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                lock.readLock().lock();
+                try {
+                    return new HyponymIterator(index, hyponyms, n);
+                }
+                finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    // walks immutable indexes, which edits replace rather than change
+    private static class HyponymIterator implements Iterator<String> {
+        private final NounIndex index;
+        private final Iterator<Integer> synsets;
+        private final BitSet seen = new BitSet();
+        private int next = -1;   // synsetNouns index of the next noun, -1 if not found yet
+        private int i, last;     // the nouns of the current synset still to be looked at
+
+        HyponymIterator(NounIndex index, HyponymIndex hyponyms, int noun) {
+            this.index = index;
+            int[] offsets = index.offsets();
+            synsets = hyponyms.descendants(index.ids(), offsets[noun], offsets[noun + 1]).iterator();
+            seen.set(noun);
+        }
 
-        int ancestorID = sap.ancestor(hash.get(nounA), hash.get(nounB));
-        if (ancestorID == -1) {
-            return null;
+        public boolean hasNext() {
+            int[] synsetOffsets = index.synsetOffsets();
+            int[] synsetNouns = index.synsetNouns();
+            while (next == -1) {
+                if (i < last) {
+                    if (!seen.get(synsetNouns[i])) {
+                        seen.set(synsetNouns[i]);
+                        next = i;
+                    }
+                    ++i;
+                }
+                else if (synsets.hasNext()) {
+                    int x = synsets.next();
+                    i = synsetOffsets[x];
+                    last = synsetOffsets[x + 1];
+                }
+                else {
+                    return false;
+                }
+            }
+            return true;
         }
-        else {
-            return synset.get(ancestorID);
+
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String noun = index.noun(index.synsetNouns()[next]);
+            next = -1;
+            return noun;
         }
+
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException();
+        }
+    }
+
+    // a synset that is the common ancestor of nounA and nounB in a shortest ancestral path
+    public String sap(String nounA, String nounB) {
+        lock.readLock().lock();
+        try {
+            int ancestorID = path(nounA, nounB).ancestor();
+            if (ancestorID == -1) {
+                return null;
+            }
+            else {
+                return synset[ancestorID];
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // writes the snapshot of the WordNet given by the synsets and hypernyms files
+    public static void main(String[] args) {
+        Stopwatch timer = new Stopwatch();
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        StdOut.println("parsed in " + timer.elapsedTime() + " seconds");
+        wordnet.save(args[2]);
+        timer = new Stopwatch();
+        wordnet = load(args[2]);
+        StdOut.println("loaded " + args[2] + " in " + timer.elapsedTime() + " seconds");
     }
 }
\ No newline at end of file
@@ -0,0 +1,355 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+// benchmarks of WordNet, SAP and Outcast on the testcase files, run the way
+// JMH runs them: every benchmark first runs warmup iterations, then measured
+// iterations of about ITERATION_NANOS each, and reports the mean time per
+// operation with its standard deviation, and the bytes allocated per operation
+// by all threads, so that the work a WordNet hands to its load pool counts;
+// the inputs are drawn up front from a fixed seed
+public class WordNetBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final long ITERATION_NANOS = 1000000000L;
+    // random queries drawn for every query benchmark, walked round robin
+    private static final int QUERIES = 1 << 12;
+    private static final long SEED = 20150209L;
+
+    // results of the operations are folded in here, so that the JIT cannot drop them
+    private static volatile int sink;
+
+    private abstract static class Benchmark {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        // the i-th operation
+        abstract int run(int i);
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    // bytes allocated so far by every live thread, by thread id; null if the JVM cannot tell
+    private static Map<Long, Long> allocatedBytes() {
+        if (THREADS == null) {
+            return null;
+        }
+        long[] ids = THREADS.getAllThreadIds();
+        long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<Long, Long>();
+        for (int i = 0; i < ids.length; ++i) {
+            if (bytes[i] >= 0) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+
+    // bytes allocated between the two samples by the threads alive at the
+    // second; what a thread allocated before it ended is not counted
+    private static long allocatedSince(Map<Long, Long> start, Map<Long, Long> end) {
+        if (THREADS == null) {
+            return -1;
+        }
+        long bytes = 0;
+        for (Map.Entry<Long, Long> entry : end.entrySet()) {
+            Long before = start.get(entry.getKey());
+            bytes += entry.getValue() - (before == null ? 0 : before);
+        }
+        return bytes;
+    }
+
+    private static void measure(Benchmark benchmark) {
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        long ops = 0, bytes = 0;
+        int i = 0;
+        for (int iteration = -WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; ++iteration) {
+            int n = 0;
+            int result = 0;
+            Map<Long, Long> before = allocatedBytes();
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                result += benchmark.run(i++);
+                ++n;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ITERATION_NANOS);
+            long allocated = allocatedSince(before, allocatedBytes());
+            sink += result;
+            if (iteration >= 0) {
+                nanosPerOp[iteration] = (double) elapsed / n;
+                ops += n;
+                bytes += allocated;
+            }
+        }
+
+        double mean = 0;
+        for (double t : nanosPerOp) {
+            mean += t;
+        }
+        mean /= MEASURED_ITERATIONS;
+        double variance = 0;
+        for (double t : nanosPerOp) {
+            variance += (t - mean) * (t - mean);
+        }
+        double sd = Math.sqrt(variance / (MEASURED_ITERATIONS - 1));
+        String alloc = THREADS == null ? "n/a" : String.format("%.1f", (double) bytes / ops);
+        StdOut.printf("%-40s %6d %14.3f +- %12.3f %6s %14s%n",
+                      benchmark.name, MEASURED_ITERATIONS, mean / 1000, sd / 1000, "us/op", alloc);
+    }
+
+    // writes a synsets file for the hypernyms files of the directory, among names, that
+    // exist: synset id gets the noun s + id, and the nouns of the outcast files go to
+    // synsets drawn from the fixed seed, so that the Outcast benchmarks find them;
+    // returns its path, or null if there are no hypernyms files
+    private static String synthesize(String directory, String[] names) {
+        int V = 0;
+        for (String name : names) {
+            File hypernyms = new File(directory, name);
+            if (!hypernyms.exists()) {
+                continue;
+            }
+            In in = new In(hypernyms.getPath());
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                for (String id : line.split(",")) {
+                    V = Math.max(V, Integer.parseInt(id.trim()) + 1);
+                }
+            }
+        }
+        if (V == 0) {
+            return null;
+        }
+        TreeSet<String> outcastNouns = new TreeSet<String>();
+        for (String name : new File(directory).list()) {
+            if (name.startsWith("outcast")) {
+                outcastNouns.addAll(Arrays.asList(new In(new File(directory, name).getPath()).readAllStrings()));
+            }
+        }
+        String[] nouns = new String[V];
+        for (int id = 0; id < V; ++id) {
+            nouns[id] = "s" + id;
+        }
+        Random random = new Random(SEED);
+        for (String noun : outcastNouns) {
+            int id = random.nextInt(V);
+            nouns[id] += " " + noun;
+        }
+        try {
+            File synsets = File.createTempFile("synsets", ".txt");
+            synsets.deleteOnExit();
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(synsets), StandardCharsets.UTF_8));
+            try {
+                for (int id = 0; id < V; ++id) {
+                    out.write(id + "," + nouns[id] + ",synthetic synset " + id + "\n");
+                }
+            }
+            finally {
+                out.close();
+            }
+            StdOut.println("using synthetic synsets " + synsets + " with " + V + " synsets");
+            return synsets.getPath();
+        }
+        catch (IOException e) {
+            throw new java.lang.IllegalStateException("could not write synthetic synsets", e);
+        }
+    }
+
+    // the hypernyms files of the directory, among names, that exist and make a
+    // WordNet with the synsets file; the others are skipped with a message
+    private static List<String> fitting(String synsets, String directory, String[] names) {
+        List<String> fitting = new ArrayList<String>();
+        for (String name : names) {
+            String hypernyms = new File(directory, name).getPath();
+            if (!new File(hypernyms).exists()) {
+                continue;
+            }
+            try {
+                new WordNet(synsets, hypernyms, 0);
+                fitting.add(hypernyms);
+            }
+            catch (RuntimeException e) {
+                StdOut.println("skipping " + name + ", which does not fit " + synsets + ": " + e);
+            }
+        }
+        return fitting;
+    }
+
+    private static List<Benchmark> construction(final String synsets, List<String> hypernymsFiles) {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (final String hypernyms : hypernymsFiles) {
+            benchmarks.add(new Benchmark("WordNet.<init> " + new File(hypernyms).getName()) {
+                int run(int i) {
+                    return new WordNet(synsets, hypernyms, 0).isNoun("entity") ? 1 : 0;
+                }
+            });
+        }
+        return benchmarks;
+    }
+
+    private static List<Benchmark> sap(String directory) {
+        File digraph = new File(directory, "digraph-wordnet.txt");
+        if (!digraph.exists()) {
+            StdOut.println("skipping the SAP benchmarks, there is no " + digraph);
+            return new ArrayList<Benchmark>();
+        }
+        Digraph G = new Digraph(new In(digraph.getPath()));
+        // no cache, so that every query searches
+        final SAP sap = new SAP(G, 0);
+        Random random = new Random(SEED);
+        final int[] v = new int[QUERIES];
+        final int[] w = new int[QUERIES];
+        final List<List<Integer>> vSets = new ArrayList<List<Integer>>(QUERIES);
+        final List<List<Integer>> wSets = new ArrayList<List<Integer>>(QUERIES);
+        for (int i = 0; i < QUERIES; ++i) {
+            v[i] = random.nextInt(G.V());
+            w[i] = random.nextInt(G.V());
+            vSets.add(randomSet(random, G.V()));
+            wSets.add(randomSet(random, G.V()));
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("SAP.length vertex") {
+            int run(int i) {
+                i &= QUERIES - 1;
+                return sap.length(v[i], w[i]);
+            }
+        });
+        benchmarks.add(new Benchmark("SAP.length set") {
+            int run(int i) {
+                i &= QUERIES - 1;
+                return sap.length(vSets.get(i), wSets.get(i));
+            }
+        });
+        return benchmarks;
+    }
+
+    // one to five distinct random vertices
+    private static List<Integer> randomSet(Random random, int V) {
+        List<Integer> set = new ArrayList<Integer>();
+        for (int k = 1 + random.nextInt(5); set.size() < k; ) {
+            int x = random.nextInt(V);
+            if (!set.contains(x)) {
+                set.add(x);
+            }
+        }
+        return set;
+    }
+
+    private static List<Benchmark> wordNet(String synsets, String hypernyms, String directory) {
+        // no cache, so that every query searches
+        final WordNet wordnet = new WordNet(synsets, hypernyms, 0);
+        List<String> nouns = new ArrayList<String>();
+        for (String noun : wordnet.nouns()) {
+            nouns.add(noun);
+        }
+        Random random = new Random(SEED);
+        final String[] a = new String[QUERIES];
+        final String[] b = new String[QUERIES];
+        for (int i = 0; i < QUERIES; ++i) {
+            a[i] = nouns.get(random.nextInt(nouns.size()));
+            b[i] = nouns.get(random.nextInt(nouns.size()));
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("WordNet.distance") {
+            int run(int i) {
+                i &= QUERIES - 1;
+                return wordnet.distance(a[i], b[i]);
+            }
+        });
+
+        // the outcast files whose nouns are all in this WordNet, sorted by name
+        final Outcast outcast = new Outcast(wordnet);
+        String[] names = new File(directory).list();
+        Arrays.sort(names);
+        for (String name : names) {
+            if (!name.startsWith("outcast")) {
+                continue;
+            }
+            final String[] words = new In(new File(directory, name).getPath()).readAllStrings();
+            boolean known = true;
+            for (String word : words) {
+                known &= wordnet.isNoun(word);
+            }
+            if (!known) {
+                continue;
+            }
+            benchmarks.add(new Benchmark("Outcast.outcast " + name) {
+                int run(int i) {
+                    return outcast.outcast(words).length();
+                }
+            });
+        }
+        return benchmarks;
+    }
+
+    // usage: java WordNetBenchmark testcase-directory [synsets-file [name-filter]]
+    // where the synsets file goes with hypernyms.txt and hypernyms100K.txt through
+    // hypernyms300K.txt of the directory; without one, or if it is "", the
+    // directory's synsets.txt is used if there is one, and otherwise a synthetic
+    // synsets file made for the hypernyms files by synthesize(); only benchmarks
+    // whose names contain the filter run
+    public static void main(String[] args) {
+        String directory = args[0];
+        boolean given = args.length > 1 && !args[1].isEmpty();
+        String synsets = given ? args[1] : new File(directory, "synsets.txt").getPath();
+        String[] names = { "hypernyms.txt", "hypernyms100K.txt", "hypernyms200K.txt", "hypernyms300K.txt" };
+        if (!given && !new File(synsets).exists()) {
+            synsets = synthesize(directory, names);
+        }
+        String filter = args.length > 2 ? args[2] : "";
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.addAll(sap(directory));
+        if (synsets == null) {
+            StdOut.println("skipping the WordNet benchmarks, there are no hypernyms files to go with synsets");
+        }
+        else if (!new File(synsets).exists()) {
+            StdOut.println("skipping the WordNet benchmarks, there is no " + synsets);
+        }
+        else {
+            List<String> hypernymsFiles = fitting(synsets, directory, names);
+            if (hypernymsFiles.isEmpty()) {
+                StdOut.println("skipping the WordNet benchmarks, no hypernyms file fits " + synsets);
+            }
+            else {
+                benchmarks.addAll(wordNet(synsets, hypernymsFiles.get(0), directory));
+                benchmarks.addAll(construction(synsets, hypernymsFiles));
+            }
+        }
+
+        StdOut.printf("%-40s %6s %29s %6s %14s%n", "Benchmark", "Cnt", "Score +- Error", "Units", "alloc B/op");
+        for (Benchmark benchmark : benchmarks) {
+            if (benchmark.name.contains(filter)) {
+                measure(benchmark);
+            }
+        }
+    }
+}
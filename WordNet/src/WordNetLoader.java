@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// reads the synsets and hypernyms files of a WordNet: both files are
+// memory-mapped, cut into chunks on line boundaries and parsed in parallel,
+// then merged in file order into the noun index and the CSR digraph, which
+// is checked to be a rooted DAG in parallel as well
+public class WordNetLoader {
+    // smallest chunk worth a task of its own
+    private static final int MIN_CHUNK = 1 << 16;
+    // vertices counted by one root-counting task
+    private static final int VERTICES_PER_TASK = 1 << 14;
+
+    private final NounIndex index;
+    private final String[] synset;
+    private final CSRDigraph G;
+
+    // the synsets of one chunk of the synsets file
+    private static class SynsetChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer file;
+        private final int lo, hi;
+        private int count;
+        private int[] ids;
+        private String[] synsets;
+
+        SynsetChunk(ByteBuffer file, int lo, int hi) {
+            this.file = file;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            byte[] buf = read(file, lo, hi);
+            ids = new int[16];
+            synsets = new String[16];
+            for (int s = 0; s < buf.length; ) {
+                int e = lineEnd(buf, s);
+                if (e > s) {
+                    int c1 = indexOf(buf, (byte) ',', s, e);
+                    int c2 = indexOf(buf, (byte) ',', c1 + 1, e);
+                    if (c1 == e) {
+                        throw new java.lang.IllegalArgumentException("malformed synset: " + new String(buf, s, e - s, StandardCharsets.UTF_8));
+                    }
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, 2 * count);
+                        synsets = Arrays.copyOf(synsets, 2 * count);
+                    }
+                    ids[count] = parseInt(buf, s, c1);
+                    synsets[count] = new String(buf, c1 + 1, c2 - c1 - 1, StandardCharsets.UTF_8);
+                    ++count;
+                }
+                s = next(buf, e);
+            }
+        }
+    }
+
+    // the edges of one chunk of the hypernyms file
+    private static class HypernymChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer file;
+        private final int lo, hi;
+        private int count;
+        private int[] from, to;
+
+        HypernymChunk(ByteBuffer file, int lo, int hi) {
+            this.file = file;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            byte[] buf = read(file, lo, hi);
+            from = new int[16];
+            to = new int[16];
+            for (int s = 0; s < buf.length; ) {
+                int e = lineEnd(buf, s);
+                if (e > s) {
+                    int c = indexOf(buf, (byte) ',', s, e);
+                    int id = parseInt(buf, s, c);
+                    while (c < e) {
+                        int d = indexOf(buf, (byte) ',', c + 1, e);
+                        if (count == from.length) {
+                            from = Arrays.copyOf(from, 2 * count);
+                            to = Arrays.copyOf(to, 2 * count);
+                        }
+                        from[count] = id;
+                        to[count] = parseInt(buf, c + 1, d);
+                        ++count;
+                        c = d;
+                    }
+                }
+                s = next(buf, e);
+            }
+        }
+    }
+
+    // number of vertices in [lo, hi) without outgoing edges
+    private static class RootCount extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        private final CSRDigraph G;
+        private final int lo, hi;
+
+        RootCount(CSRDigraph G, int lo, int hi) {
+            this.G = G;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (hi - lo <= VERTICES_PER_TASK) {
+                int roots = 0;
+                for (int v = lo; v < hi; ++v) {
+                    if (G.outdegree(v) == 0) {
+                        ++roots;
+                    }
+                }
+                return roots;
+            }
+            int mid = (lo + hi) >>> 1;
+            RootCount left = new RootCount(G, lo, mid);
+            left.fork();
+            int right = new RootCount(G, mid, hi).compute();
+            return left.join() + right;
+        }
+    }
+
+    // loads and validates the WordNet given by the two files, parsing on pool
+    public WordNetLoader(String synsets, String hypernyms, ForkJoinPool pool) {
+        List<SynsetChunk> synsetChunks = new ArrayList<SynsetChunk>();
+        ByteBuffer file = map(synsets);
+        for (int[] chunk : chunks(file, pool.getParallelism())) {
+            synsetChunks.add(new SynsetChunk(file, chunk[0], chunk[1]));
+        }
+        List<HypernymChunk> hypernymChunks = new ArrayList<HypernymChunk>();
+        file = map(hypernyms);
+        for (int[] chunk : chunks(file, pool.getParallelism())) {
+            hypernymChunks.add(new HypernymChunk(file, chunk[0], chunk[1]));
+        }
+        for (SynsetChunk chunk : synsetChunks) {
+            pool.execute(chunk);
+        }
+        for (HypernymChunk chunk : hypernymChunks) {
+            pool.execute(chunk);
+        }
+
+        // merge the synsets in file order, so the nouns keep their order of first appearance
+        int numID = 0;
+        for (SynsetChunk chunk : synsetChunks) {
+            chunk.join();
+            numID += chunk.count;
+        }
+        synset = new String[numID];
+        NounIndex.Builder builder = new NounIndex.Builder();
+        for (SynsetChunk chunk : synsetChunks) {
+            for (int i = 0; i < chunk.count; ++i) {
+                int id = chunk.ids[i];
+                if (id < 0 || id >= numID) {
+                    throw new java.lang.IllegalArgumentException("synset id out of range: " + id);
+                }
+                synset[id] = chunk.synsets[i];
+                String words = chunk.synsets[i];
+                for (int s = 0, e; s < words.length(); s = e + 1) {
+                    e = words.indexOf(' ', s);
+                    if (e == -1) {
+                        e = words.length();
+                    }
+                    if (e > s) {
+                        builder.add(words.substring(s, e), id);
+                    }
+                }
+            }
+        }
+        index = builder.build();
+
+        int numEdge = 0;
+        for (HypernymChunk chunk : hypernymChunks) {
+            chunk.join();
+            numEdge += chunk.count;
+        }
+        int[] from = new int[numEdge];
+        int[] to = new int[numEdge];
+        int e = 0;
+        for (HypernymChunk chunk : hypernymChunks) {
+            System.arraycopy(chunk.from, 0, from, e, chunk.count);
+            System.arraycopy(chunk.to, 0, to, e, chunk.count);
+            e += chunk.count;
+        }
+        G = new CSRDigraph(numID, from, to, numEdge);
+
+        // check whether the input is a rooted DAG
+        if (pool.invoke(new RootCount(G, 0, G.V())) > 1) {
+            throw new java.lang.IllegalArgumentException();
+        }
+        if (G.hasCycle(pool)) {
+            throw new java.lang.IllegalArgumentException();
+        }
+    }
+
+    public NounIndex index() {
+        return index;
+    }
+
+    // synset[id] is the synset with the given id
+    public String[] synsets() {
+        return synset;
+    }
+
+    public CSRDigraph digraph() {
+        return G;
+    }
+
+    private static ByteBuffer map(String filename) {
+        try {
+            RandomAccessFile file = new RandomAccessFile(filename, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch (IOException e) {
+            throw new java.lang.IllegalArgumentException("could not read " + filename, e);
+        }
+    }
+
+    // [lo, hi) byte ranges covering file, each ending right after a newline or at the end
+    private static List<int[]> chunks(ByteBuffer file, int parallelism) {
+        int size = file.limit();
+        int chunk = Math.max(MIN_CHUNK, size / (4 * parallelism));
+        List<int[]> chunks = new ArrayList<int[]>();
+        for (int lo = 0; lo < size; ) {
+            int hi = Math.min(size, lo + chunk);
+            while (hi < size && file.get(hi - 1) != '\n') {
+                ++hi;
+            }
+            chunks.add(new int[] { lo, hi });
+            lo = hi;
+        }
+        return chunks;
+    }
+
+    private static byte[] read(ByteBuffer file, int lo, int hi) {
+        byte[] buf = new byte[hi - lo];
+        ByteBuffer view = file.duplicate();
+        view.position(lo);
+        view.get(buf);
+        return buf;
+    }
+
+    // end of the line starting at s, not counting a carriage return
+    private static int lineEnd(byte[] buf, int s) {
+        int e = indexOf(buf, (byte) '\n', s, buf.length);
+        if (e > s && buf[e - 1] == '\r') {
+            --e;
+        }
+        return e;
+    }
+
+    // start of the line after the one ending at e
+    private static int next(byte[] buf, int e) {
+        while (e < buf.length && buf[e] != '\n') {
+            ++e;
+        }
+        return e + 1;
+    }
+
+    // index of the first b in buf[from, to), to if there is none
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int parseInt(byte[] buf, int from, int to) {
+        while (from < to && buf[from] == ' ') {
+            ++from;
+        }
+        while (to > from && buf[to - 1] == ' ') {
+            --to;
+        }
+        if (from == to || to - from > 9) {
+            throw new java.lang.IllegalArgumentException("malformed id: " + new String(buf, from, to - from, StandardCharsets.UTF_8));
+        }
+        int n = 0;
+        for (int i = from; i < to; ++i) {
+            if (buf[i] < '0' || buf[i] > '9') {
+                throw new java.lang.IllegalArgumentException("malformed id: " + new String(buf, from, to - from, StandardCharsets.UTF_8));
+            }
+            n = 10 * n + (buf[i] - '0');
+        }
+        return n;
+    }
+}